@@ -0,0 +1,41 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+// Creates the indexes declared on the documents ( @Indexed, @CompoundIndex) at startup
+// Spring Boot no longer creates them on its own ( spring.data.mongodb.auto-index-creation is off by default), so without this
+// every query on year / name runs as a collection scan. ensureIndex() is a no-op for an index that already exists
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    private static final List<Class<?>> DOCUMENTS = List.of(MovieInfo.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void ensureIndexes() {
+
+        var indexResolver = new MongoPersistentEntityIndexResolver(reactiveMongoTemplate.getConverter().getMappingContext());
+
+        Flux.fromIterable(DOCUMENTS)
+                .concatMap(document -> Flux.fromIterable(indexResolver.resolveIndexFor(document))
+                        .concatMap(index -> reactiveMongoTemplate.indexOps(document).ensureIndex(index))
+                        .doOnNext(indexName -> log.info("Index {} on {} is in place", indexName, document.getSimpleName())))
+                .blockLast(Duration.ofSeconds(60));   // block : the application is not ready before its indexes are
+    }
+}
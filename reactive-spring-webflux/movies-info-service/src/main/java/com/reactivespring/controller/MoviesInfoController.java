@@ -2,22 +2,30 @@ package com.reactivespring.controller;
 
 // Create a movieinfo into Mongo repository
 
+import com.reactivespring.domain.BulkIngestSummary;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoPatch;
+import com.reactivespring.domain.SequencedMovieInfo;
+import com.reactivespring.service.MovieInfoBulkService;
+import com.reactivespring.service.MovieInfoFeed;
 import com.reactivespring.service.MoviesInfoService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
 import java.rmi.MarshalledObject;
 import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1")
@@ -29,19 +37,25 @@ public class MoviesInfoController {
 
 
 
-    //Publish & Subscribe : Sink publishes multiple events and will replay all events once a subscriber is connected to it
-    Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().all();  //// replay().all() : anytime a new subscriber is added it will replay al levents
+    //Publish & Subscribe : Sink publishes multiple events and will replay the retained events once a subscriber is connected to it
+    //Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().all();  //// replay().all() : anytime a new subscriber is added it will replay al levents. Keeps every event on the heap forever
     //Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().latest(); //// replay().latest() -> First subscriber will get all and subsequently only the latest event will be streamed to all subscriber.
+    private MovieInfoBulkService movieInfoBulkService;
+
+    private MovieInfoFeed movieInfoFeed;   // bounded replay sink or MongoDB change stream, with sequence ids. Refer MovieInfoFeed
 
 
     //Generate constructor ( Right click -> Generate -> constructor) to inject MoviesInfoService into this class)
     // Alternate method is to use the autowired annotation in the moviesInfoService declaration
-    public MoviesInfoController(MoviesInfoService moviesInfoService) {
+    public MoviesInfoController(MoviesInfoService moviesInfoService, MovieInfoFeed movieInfoFeed, MovieInfoBulkService movieInfoBulkService) {
 
         this.moviesInfoService = moviesInfoService;
+        this.movieInfoFeed = movieInfoFeed;
+        this.movieInfoBulkService = movieInfoBulkService;
     }
 
     // Post MovieInfo
+    // save() inserts the movie info, or replaces the one with the same id. The version is not checked, use PUT / PATCH for that
     @PostMapping("/movieinfos")           // post url : localhost:8080/v1/moviesinfos
     @ResponseStatus(HttpStatus.CREATED)    // Http response to be expected
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {    // movieINfo needs to be provided by client
@@ -52,27 +66,58 @@ public class MoviesInfoController {
     }
 
 
+    // Bulk load : POST /v1/movieinfos/bulk with one MovieInfo json per line ( Content-Type application/x-ndjson)
+    // Records are validated and inserted in batches while the body streams in. Refer MovieInfoBulkService
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<BulkIngestSummary> bulkInsertMovieInfos(@RequestBody Flux<MovieInfo> movieInfos) {
+        return movieInfoBulkService.bulkInsertMovieInfos(movieInfos);
+    }
+
+
     // Get all movies
+    // fields : optional comma separated list of the fields to return, e.g. fields=name,year ( all GET endpoints below and POST /movieinfos/batch support it)
     @GetMapping("/movieinfos")           // get url : localhost:8080/v1/moviesinfos
-    public Flux<MovieInfo> getAllMovieInfos(){
+    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "fields", required = false) String fields){
+        if (fields != null) {
+            return moviesInfoService.getAllMovieInfos(fields).log();
+        }
         return moviesInfoService.getAllMovieInfos().log();
 
     }
 
 
 
+    // Get all movies one page at a time : GET /v1/movieinfos/page?limit=50&sort=year&after=<nextCursor of the previous page>
+    // sort is "id" ( default) or "year". Refer MoviesInfoService.getMovieInfosPage
+    @GetMapping("/movieinfos/page")
+    public Mono<MovieInfoPage> getMovieInfosPage(@RequestParam(value = "sort", defaultValue = "id") String sort,
+                                                 @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                 @RequestParam(value = "after", required = false) String after,
+                                                 @RequestParam(value = "fields", required = false) String fields){
+        if (!sort.equals("id") && !sort.equals("year")) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be id or year"));
+        }
+        return moviesInfoService.getMovieInfosPage(sort, limit, after, fields);
+    }
+
+
+
     // Get a movie by an id
     @GetMapping("/movieinfos/{id}")           // get url : localhost:8080/v1/movieinfos/<id>
-    public Mono<MovieInfo> getMovieInfoById(@PathVariable("id") String id){  // id will eb provided in request
+    public Mono<MovieInfo> getMovieInfoById(@PathVariable("id") String id, @RequestParam(value = "fields", required = false) String fields){  // id will eb provided in request
+        if (fields != null) {
+            return moviesInfoService.getMovieInfoByID(id, fields).log();
+        }
         return moviesInfoService.getMovieInfoByID(id).log();
 
     }
 
     // Get a movie by an id - Approach 2
     @GetMapping("/movieinfos_2/{id}")           // get url : localhost:8080/v1/movieinfos_2/<id>
-    public Mono<ResponseEntity<MovieInfo>> getMovieInfoById_approach2(@PathVariable("id") String id){  // id will be provided in request
+    public Mono<ResponseEntity<MovieInfo>> getMovieInfoById_approach2(@PathVariable("id") String id, @RequestParam(value = "fields", required = false) String fields){  // id will be provided in request
 
-        return moviesInfoService.getMovieInfoByID(id)
+        var movieInfoMono = fields != null ? moviesInfoService.getMovieInfoByID(id, fields) : moviesInfoService.getMovieInfoByID(id);
+        return movieInfoMono
                 .map(movieInfo1 -> ResponseEntity.ok()     // if response is ok
                         .body(movieInfo1))  // get movieInfo in response body
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build())) //switch to not found response entity if nothing is nothing is retrieved for given id
@@ -81,11 +126,37 @@ public class MoviesInfoController {
 
 
 
+    // Get many movies by id in one call : GET /v1/movieinfos/batch?ids=abc,def
+    // Streamed as NDJSON, one MovieInfo per id found. Ids which do not exist are left out.
+    @GetMapping(value = "/movieinfos/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> getMovieInfosByIds(@RequestParam("ids") List<String> ids, @RequestParam(value = "fields", required = false) String fields){
+        if (fields != null) {
+            return moviesInfoService.getMovieInfosByIds(ids, fields);
+        }
+        return moviesInfoService.getMovieInfosByIds(ids);
+    }
+
+    // POST variant for id lists which do not fit into a query string. Body is a json array of ids : ["abc","def"]
+    @PostMapping(value = "/movieinfos/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> getMovieInfosByIdsBody(@RequestBody List<String> ids, @RequestParam(value = "fields", required = false) String fields){
+        if (fields != null) {
+            return moviesInfoService.getMovieInfosByIds(ids, fields);
+        }
+        return moviesInfoService.getMovieInfosByIds(ids);
+    }
+
+
+
     // Get all movies for a year which is provided as a request parm
     @GetMapping("/movieinfosForYear")           // get url : localhost:8080/v1/movieinfosForYear; provide year as an optional  request parm
-    public Flux<MovieInfo> getAllMovieInfosForYear(@RequestParam(value = "year", required = false) Integer year){
+    public Flux<MovieInfo> getAllMovieInfosForYear(@RequestParam(value = "year", required = false) Integer year,
+                                                   @RequestParam(value = "fields", required = false) String fields){
         log.info("year: {}", year); // log year if provided
 
+        if (fields != null) {
+            return year != null ? moviesInfoService.getMovieInfoByYear(year, fields).log() : moviesInfoService.getAllMovieInfos(fields).log();
+        }
+
         // check if year is provided
         if(year != null){
             return moviesInfoService.getMovieInfoByYear(year).log();
@@ -99,9 +170,10 @@ public class MoviesInfoController {
 
     // Get a movie by name
     @GetMapping("/movieinfosForName/{name}")           // get url : localhost:8080/v1/moviesinfos/<name>
-    public Mono<ResponseEntity<MovieInfo>> getMovieInfoByName(@PathVariable("name") String name){  // name will be provided in request
+    public Mono<ResponseEntity<MovieInfo>> getMovieInfoByName(@PathVariable("name") String name, @RequestParam(value = "fields", required = false) String fields){  // name will be provided in request
 
-        return moviesInfoService.getMovieInfoByName(name)
+        var movieInfoMono = fields != null ? moviesInfoService.getMovieInfoByName(name, fields) : moviesInfoService.getMovieInfoByName(name);
+        return movieInfoMono
                 .map(movieInfo1 -> ResponseEntity.ok()     // if response is ok
                         .body(movieInfo1))  // get movieInfo in response body
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build())) //switch to not found response entity if nothing is nothing is retrieved for given id
@@ -134,6 +206,21 @@ public class MoviesInfoController {
 
 
 
+    // Partial update : only the fields in the body are changed, in one atomic findAndModify. Refer MoviesInfoService.patchMovieInfo
+    // Pass the version of the movie info as read to get 409 Conflict instead of overwriting a concurrent update
+    @PatchMapping("movieinfos/{id}")           //  url : localhost:8080/v1/moviesinfos/<id>
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@RequestBody @Valid MovieInfoPatch movieInfoPatch, @PathVariable String id){
+        if (movieInfoPatch.isEmpty()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Nothing to update"));
+        }
+        return moviesInfoService.patchMovieInfo(movieInfoPatch, id)
+                .map(movieInfo1 -> ResponseEntity.ok()
+                        .body(movieInfo1))
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+
+
+
     @DeleteMapping("movieinfos/{id}")           // get url : localhost:8080/v1/moviesinfos/<id>
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovieInfoById(@PathVariable String id){
@@ -164,7 +251,7 @@ public class MoviesInfoController {
                 // 2. Publish the Movie Info : Manual triggering using tryEmitNext()
                 // 3. tryEventNext() automatically takes care of the Failure Handler and so no explicit FailureHandler is required
                 .doOnNext(savedMovieInfo -> {
-                    moviesInfoSink.tryEmitNext(savedMovieInfo);
+                    movieInfoFeed.publish(savedMovieInfo);
                     //moviesInfoSink.tryEmitComplete();  // will stop publishing as soon as the first movie info is published
                })
 
@@ -179,13 +266,16 @@ public class MoviesInfoController {
     // Subscribe to the above published SSE
     // Client will connect to the url which will automatically subscribe to that particular sink which will continuously publish the movie info events
     // On hitting this url, it will keep on subscribing to the published events. On a browser this will keep on downloading the json file. In order to see a result uncomment 'moviesInfoSink.tryEmitComplete()' operator in addMovieInfo_publish() above. This will donload only one event.
+    // after : optional sequence id of the last event seen, only later events are streamed. Refer MovieInfoFeed
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)    // Will download teh json file when url is opened in browser.Get url : localhost:8080/v1/movieinfos/stream
-    public Flux<MovieInfo> getMovieInfoById_subscriber(){
+    public Flux<MovieInfo> getMovieInfoById_subscriber(@RequestParam(value = "after", required = false) Long after){
 
 
 
 
-            var movieInfoFlux  =  moviesInfoSink.asFlux()     // subscribe and return as Flux.
+            var movieInfoFlux  =  movieInfoFeed.subscribe(after)     // subscribe and return as Flux.
+                    .filter(event -> !SequencedMovieInfo.DELETE.equals(event.getOperation()))   // only /movieinfos/events reports deletes
+                    .map(SequencedMovieInfo::getMovieInfo)
                     .take(Duration.ofSeconds(5)) // subscribe only for this duration. Can be commented out for continuous subscription.
                    // .take(5)      // subscribe only for the specified event count
                     .log();
@@ -195,4 +285,18 @@ public class MoviesInfoController {
        }
 
 
+    // Resumable variant of the above as Server Sent Events : the id of every event is its sequence id
+    // A client re-connecting passes the id of the last event it has seen in the Last-Event-ID header ( browsers' EventSource do this on their own)
+    // or in the 'after' request parm, and only gets the events after it. Unlike /movieinfos/stream this subscription does not end on its own.
+    @GetMapping(value = "/movieinfos/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)    // Get url : localhost:8080/v1/movieinfos/events?after=<seq>
+    public Flux<ServerSentEvent<MovieInfo>> getMovieInfoEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                               @RequestParam(value = "after", required = false) Long after){
+
+        return movieInfoFeed.subscribe(lastEventId != null ? lastEventId : after)
+                .map(event -> ServerSentEvent.builder(event.getMovieInfo())
+                        .id(String.valueOf(event.getSeq()))
+                        .event(event.getOperation())   // insert, update or delete ( the data of a delete only carries the id)
+                        .build());
+    }
+
 }
@@ -0,0 +1,21 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Outcome of one batch of a bulk ingest ( refer MovieInfoBulkService)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkBatchResult {
+
+    private int batch;   // 1 based, in order of arrival
+    private int received;
+    private int inserted;
+    private int invalid;   // failed validation, not sent to the database
+    private int failed;   // rejected by the database, e.g. duplicate id
+    private List<String> errors;   // "record <index> : <reason>", capped per batch
+}
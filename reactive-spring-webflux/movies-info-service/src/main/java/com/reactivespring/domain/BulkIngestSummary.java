@@ -0,0 +1,31 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Response of POST /v1/movieinfos/bulk : totals over all batches plus the result of every batch
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkIngestSummary {
+
+    private long received;
+    private long inserted;
+    private long invalid;
+    private long failed;
+    private long durationMillis;
+    private List<BulkBatchResult> batches;
+
+    public static BulkIngestSummary of(List<BulkBatchResult> batches, long durationMillis) {
+        return new BulkIngestSummary(
+                batches.stream().mapToLong(BulkBatchResult::getReceived).sum(),
+                batches.stream().mapToLong(BulkBatchResult::getInserted).sum(),
+                batches.stream().mapToLong(BulkBatchResult::getInvalid).sum(),
+                batches.stream().mapToLong(BulkBatchResult::getFailed).sum(),
+                durationMillis,
+                batches);
+    }
+}
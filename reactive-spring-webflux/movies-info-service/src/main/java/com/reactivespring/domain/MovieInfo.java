@@ -2,10 +2,13 @@ package com.reactivespring.domain;
 
 // Represents the domain for Movie Info which will eb mpaeed to the DB
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 
@@ -19,12 +22,17 @@ import java.util.List;
 @NoArgsConstructor  // Lombok
 @AllArgsConstructor  // Lombok
 @Document  // part of mongodb package. Is representation of an entity in a MongoDB.
+// Indexes are created at startup by MongoIndexInitializer
+// ( year, _id) serves findByYear as well as the keyset pages ordered by year. Refer MoviesInfoService.getMovieInfosPage
+@CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}")
+@JsonInclude(JsonInclude.Include.NON_NULL)   // fields left out by a projection ( fields= request parm) are not serialized as null
 public class MovieInfo {
 
     @Id
     private String movieInfoID;
 
     @NotBlank(message="movieInfo.name must be present")
+    @Indexed
     private String name;
 
     @NotNull
@@ -33,8 +41,18 @@ public class MovieInfo {
 
     //Since List<> is already an object we have to do something different for validation
 
+    @Indexed   // multikey index : one entry per cast member
     private List<@NotBlank(message = "movieInfo.cat must be present") String> cast;
+    @Indexed
     private LocalDate release_Date;
 
+    // optimistic concurrency : incremented by every PUT / PATCH, which can pass the version as read ( refer MoviesInfoService.findAndModify)
+    // Not a Spring Data @Version : POST ( save()) keeps writing the movie info as sent, inserting it or replacing the one with the same id
+    private Long version;
+
+    public MovieInfo(String movieInfoID, String name, Integer year, List<String> cast, LocalDate release_Date) {
+        this(movieInfoID, name, year, cast, release_Date, null);
+    }
+
 
 }
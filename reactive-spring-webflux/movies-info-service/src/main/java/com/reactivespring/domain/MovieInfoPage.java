@@ -0,0 +1,18 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One page of movie infos ( refer MoviesInfoController.getMovieInfosPage)
+// nextCursor is passed back as 'after' to get the next page. It is null on the last page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoPage {
+
+    private List<MovieInfo> items;
+    private String nextCursor;
+}
@@ -0,0 +1,34 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import java.time.LocalDate;
+import java.util.List;
+
+// Body of PATCH /v1/movieinfos/{id} : only the fields present ( not null) are changed. Refer MoviesInfoService.patchMovieInfo
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoPatch {
+
+    @Pattern(regexp = ".*\\S.*", message = "movieInfo.name must not be blank")
+    private String name;
+
+    @Positive(message = "movieInfo.year must be a positive value")
+    private Integer year;
+
+    private List<@NotBlank(message = "movieInfo.cat must be present") String> cast;
+
+    private LocalDate release_Date;
+
+    private Long version;   // optional : the update is only applied if the document still has this version, else 409 Conflict
+
+    public boolean isEmpty() {
+        return name == null && year == null && cast == null && release_Date == null;
+    }
+}
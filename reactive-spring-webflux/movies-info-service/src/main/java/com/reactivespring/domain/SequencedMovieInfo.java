@@ -0,0 +1,21 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A MovieInfo change with its position in the movie info feed. seq grows with every event,
+// so a subscriber can resume after the last seq it has seen ( refer MovieInfoFeed)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SequencedMovieInfo {
+
+    public static final String INSERT = "insert";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";   // movieInfo only carries the id of the deleted movie info
+
+    private long seq;
+    private String operation;   // insert, update or delete
+    private MovieInfo movieInfo;
+}
@@ -1,6 +1,7 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -13,4 +14,14 @@ public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo,S
 
     // custom function
     Mono<MovieInfo> findByName(String name);
+
+
+    // Keyset pagination ( refer MoviesInfoService.getMovieInfosPage). The Pageable only carries the sort and the page size,
+    // the page start is given by the last key of the previous page, so no documents are skipped on the server
+    Flux<MovieInfo> findAllBy(Pageable pageable);   // first page
+
+    Flux<MovieInfo> findByMovieInfoIDGreaterThan(String movieInfoID, Pageable pageable);   // ordered by _id
+
+    // ordered by ( year, _id) : year > ? OR ( year = ? AND _id > ?)
+    Flux<MovieInfo> findByYearGreaterThanOrYearAndMovieInfoIDGreaterThan(Integer year, Integer sameYear, String movieInfoID, Pageable pageable);
 }
@@ -0,0 +1,75 @@
+package com.reactivespring.service;
+
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonTimestamp;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+// Feed of every change of the movieInfo collection, read from a MongoDB change stream. movieinfo.feed.mode=changeStream
+// 1. Inserts, updates and deletes are streamed, whichever instance of the service ( or anything else) made them,
+//    so every replica serves the same complete feed and subscribers can be load balanced freely
+// 2. The sequence id of an event is the cluster time of the change ( BsonTimestamp as long). It is ordered and the same on every replica,
+//    so a subscriber can resume on another replica : the change stream is re-opened at that operation time
+// 3. Replay goes back as far as the oplog of the replica set does
+// Requires MongoDB to run as a replica set ( change streams are not available on a standalone server)
+@Component
+@ConditionalOnProperty(name = "movieinfo.feed.mode", havingValue = "changeStream")
+@Slf4j
+public class ChangeStreamMovieInfoFeed implements MovieInfoFeed {
+
+    private static final Set<OperationType> CHANGES = Set.of(OperationType.INSERT, OperationType.UPDATE, OperationType.REPLACE, OperationType.DELETE);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ChangeStreamMovieInfoFeed(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public void publish(MovieInfo movieInfo) {
+        // nothing to do : the save of the movie info is already in the change stream
+    }
+
+    @Override
+    public Flux<SequencedMovieInfo> subscribe(Long lastSeq) {
+
+        var options = ChangeStreamOptions.builder()
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);   // updates carry the whole movie info, not only the changed fields
+        if (lastSeq != null) {
+            options.resumeAt(new BsonTimestamp(lastSeq));   // startAtOperationTime is inclusive, the last event seen is skipped below
+        }
+
+        return reactiveMongoTemplate.changeStream(reactiveMongoTemplate.getCollectionName(MovieInfo.class), options.build(), MovieInfo.class)
+                .filter(event -> CHANGES.contains(event.getOperationType()))
+                .map(this::toSequencedMovieInfo)
+                .skipWhile(event -> lastSeq != null && event.getSeq() <= lastSeq);
+    }
+
+    private SequencedMovieInfo toSequencedMovieInfo(ChangeStreamEvent<MovieInfo> event) {
+
+        var seq = event.getBsonTimestamp().getValue();
+
+        switch (event.getOperationType()) {
+            case INSERT:
+                return new SequencedMovieInfo(seq, SequencedMovieInfo.INSERT, event.getBody());
+            case DELETE:
+                // a deleted document is gone, the event only has its key
+                var deleted = new MovieInfo();
+                var id = event.getRaw().getDocumentKey().get("_id");
+                deleted.setMovieInfoID(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());   // generated ids are stored as ObjectId
+                return new SequencedMovieInfo(seq, SequencedMovieInfo.DELETE, deleted);
+            default:
+                return new SequencedMovieInfo(seq, SequencedMovieInfo.UPDATE, event.getBody());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.reactivespring.service;
+
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// fields= request parm of the movie info reads, e.g. fields=name,year ( refer MoviesInfoService)
+// The projection is pushed down to the Mongo query : fields not asked for are neither read from disk into the response,
+// nor decoded from BSON, nor serialized ( MovieInfo leaves out null fields)
+class FieldProjection {
+
+    static final Set<String> FIELDS = Set.of("movieInfoID", "name", "year", "cast", "release_Date", "version");
+
+    private final List<String> fields;
+
+    private FieldProjection(List<String> fields) {
+        this.fields = fields;
+    }
+
+    static FieldProjection parse(String fields) {
+        var requested = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+
+        var unknown = requested.stream()
+                .filter(field -> !FIELDS.contains(field))
+                .collect(Collectors.toList());
+        if (requested.isEmpty() || !unknown.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Unknown fields " + unknown + ", fields must be a comma separated list of " + new TreeSet<>(FIELDS));
+        }
+        return new FieldProjection(requested);
+    }
+
+    // always : fields the server needs itself, e.g. the keys of a page cursor
+    Query applyTo(Query query, String... always) {
+        fields.forEach(field -> query.fields().include(field));
+        Arrays.stream(always).forEach(field -> query.fields().include(field));
+        if (!fields.contains("movieInfoID") && !Arrays.asList(always).contains("movieInfoID")) {
+            query.fields().exclude("movieInfoID");   // Mongo returns _id unless it is excluded
+        }
+        return query;
+    }
+}
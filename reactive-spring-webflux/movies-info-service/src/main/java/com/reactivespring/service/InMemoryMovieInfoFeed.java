@@ -0,0 +1,46 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+// Feed of the movie infos published on this instance ( refer MoviesInfoController.addMovieInfo_publish). movieinfo.feed.mode=memory
+// 1. Every event gets the next sequence id
+// 2. Only the last maxEvents events not older than maxAgeSeconds are kept for replay, so the heap does not grow with every event ever published
+// 3. A subscriber passing the last sequence id it has seen only gets the events after it. Without one it gets the whole retained window
+@Component
+@ConditionalOnProperty(name = "movieinfo.feed.mode", havingValue = "memory", matchIfMissing = true)
+public class InMemoryMovieInfoFeed implements MovieInfoFeed {
+
+    private final Sinks.Many<SequencedMovieInfo> moviesInfoSink;   // replay().limit() : a ring buffer bounded by count and age
+
+    // guarded by this. Starts from the clock ( in 1/1000 ms) instead of 0, so the ids keep growing across a restart of the service
+    // and a subscriber resuming with an id from before the restart is not left waiting for ids that will never come
+    private long sequence = System.currentTimeMillis() * 1000;
+
+    public InMemoryMovieInfoFeed(@Value("${movieinfo.feed.replay.maxEvents:1000}") int maxEvents,
+                                 @Value("${movieinfo.feed.replay.maxAgeSeconds:300}") long maxAgeSeconds) {
+        this.moviesInfoSink = Sinks.many().replay().limit(maxEvents, Duration.ofSeconds(maxAgeSeconds));
+    }
+
+    // synchronized : sequence ids are handed out and emitted in the same order, and the sink is never emitted to concurrently
+    @Override
+    public synchronized void publish(MovieInfo movieInfo) {
+        moviesInfoSink.tryEmitNext(new SequencedMovieInfo(++sequence, SequencedMovieInfo.INSERT, movieInfo));
+    }
+
+    @Override
+    public Flux<SequencedMovieInfo> subscribe(Long lastSeq) {
+        var events = moviesInfoSink.asFlux();
+        if (lastSeq == null) {
+            return events;
+        }
+        return events.skipWhile(event -> event.getSeq() <= lastSeq);   // events are replayed in sequence order, so skip up to the last one seen
+    }
+}
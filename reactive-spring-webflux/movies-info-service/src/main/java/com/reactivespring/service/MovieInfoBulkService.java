@@ -0,0 +1,110 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.BulkBatchResult;
+import com.reactivespring.domain.BulkIngestSummary;
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Bulk ingest of movie infos streamed in as NDJSON ( refer MoviesInfoController.bulkInsertMovieInfos)
+// 1. Records are validated as they arrive, invalid ones are reported and left out
+// 2. Valid records are written batchSize at a time with one unordered insertMany : one round trip per batch instead of one per record,
+//    and a bad record ( e.g. duplicate id) does not stop the rest of its batch
+// 3. Up to 'concurrency' batches are written at the same time. The request body is read only as fast as the batches are written,
+//    so memory stays bounded by batchSize * concurrency whatever the size of the load
+@Service
+@Slf4j
+public class MovieInfoBulkService {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final Validator validator;
+
+    @Value("${movieinfo.bulk.batchSize:1000}")
+    private int batchSize;
+
+    @Value("${movieinfo.bulk.concurrency:4}")
+    private int concurrency;
+
+    @Value("${movieinfo.bulk.maxErrorsPerBatch:20}")   // errors reported per batch, the counts are always complete
+    private int maxErrorsPerBatch;
+
+    public MovieInfoBulkService(ReactiveMongoTemplate reactiveMongoTemplate, Validator validator) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.validator = validator;
+    }
+
+    public Mono<BulkIngestSummary> bulkInsertMovieInfos(Flux<MovieInfo> movieInfos) {
+
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return movieInfos
+                    .index()   // record index in the request body, used in the error messages
+                    .buffer(batchSize)
+                    .index()   // batch number
+                    .flatMap(batch -> insertBatch(batch.getT1().intValue() + 1, batch.getT2()), concurrency)
+                    .collectSortedList(Comparator.comparingInt(BulkBatchResult::getBatch))
+                    .map(batches -> BulkIngestSummary.of(batches, Duration.ofNanos(System.nanoTime() - start).toMillis()));
+        });
+    }
+
+    private Mono<BulkBatchResult> insertBatch(int batchNumber, List<Tuple2<Long, MovieInfo>> records) {
+
+        var errors = new ArrayList<String>();
+        var documents = new ArrayList<Document>();
+        var documentRecords = new ArrayList<Long>();   // record index of every document, to report database errors
+
+        for (var record : records) {
+            var violations = validator.validate(record.getT2());
+            if (!violations.isEmpty()) {
+                addError(errors, record.getT1(), violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(",")));
+                continue;
+            }
+            record.getT2().setVersion(0L);   // a new document starts at version 0, ready for a PUT / PATCH with the version as read
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(record.getT2(), document);   // same mapping as save()
+            documents.add(document);
+            documentRecords.add(record.getT1());
+        }
+
+        var invalid = records.size() - documents.size();
+        if (documents.isEmpty()) {
+            return Mono.just(new BulkBatchResult(batchNumber, records.size(), 0, invalid, 0, errors));
+        }
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> new BulkBatchResult(batchNumber, records.size(), documents.size(), invalid, 0, errors))
+                .onErrorResume(MongoBulkWriteException.class, ex -> {   // unordered : everything but the failed documents was inserted
+                    ex.getWriteErrors().forEach(writeError -> addError(errors, documentRecords.get(writeError.getIndex()), writeError.getMessage()));
+                    var failed = ex.getWriteErrors().size();
+                    return Mono.just(new BulkBatchResult(batchNumber, records.size(), documents.size() - failed, invalid, failed, errors));
+                })
+                .doOnNext(result -> log.info("Bulk batch {} : {} inserted, {} invalid, {} failed", batchNumber, result.getInserted(), result.getInvalid(), result.getFailed()));
+    }
+
+    private void addError(List<String> errors, long recordIndex, String reason) {
+        if (errors.size() < maxErrorsPerBatch) {
+            errors.add("record " + recordIndex + " : " + reason);
+        }
+    }
+}
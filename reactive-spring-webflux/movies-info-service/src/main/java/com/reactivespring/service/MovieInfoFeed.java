@@ -0,0 +1,18 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import reactor.core.publisher.Flux;
+
+// Feed of movie info changes, streamed by MoviesInfoController ( /movieinfos/stream, /movieinfos/events)
+// The implementation is selected with movieinfo.feed.mode :
+// 1. memory ( default) : InMemoryMovieInfoFeed, only the movie infos posted to /movieinfos_publish of this instance
+// 2. changeStream : ChangeStreamMovieInfoFeed, every insert, update and delete of the movieInfo collection, whichever instance made it
+public interface MovieInfoFeed {
+
+    // called for every movie info posted to /movieinfos_publish
+    void publish(MovieInfo movieInfo);
+
+    // lastSeq : sequence id of the last event seen by the subscriber, only later events are streamed. null : everything the feed can replay
+    Flux<SequencedMovieInfo> subscribe(Long lastSeq);
+}
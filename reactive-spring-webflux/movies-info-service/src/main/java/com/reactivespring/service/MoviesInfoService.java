@@ -2,30 +2,106 @@ package com.reactivespring.service;
 
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoPatch;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Service
 public class MoviesInfoService {
 
     @Autowired   // Auto Inject movieInfoRespository into this class
     private MovieInfoRepository movieInfoRepository;
 
+    @Autowired   // projected reads, refer FieldProjection
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${movieinfo.stream.prefetch:256}")   // max number of documents requested from the Mongo cursor at a time
+    private int streamPrefetch;
+
+    @Value("${movieinfo.page.maxLimit:500}")   // max page size of getMovieInfosPage
+    private int pageMaxLimit;
+
     // Has a dependency on the MovieInfoRepository
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
        return movieInfoRepository.save(movieInfo);   // save movieInfo into Mongo repository
 
     }
 
+    // limitRate() : at most streamPrefetch documents are requested at a time. The Mongo cursor fetches batches of that size as the
+    // client reads, instead of the driver pulling the whole collection into memory for a slow client
     public Flux<MovieInfo> getAllMovieInfos(){
-        return movieInfoRepository.findAll();
+        return movieInfoRepository.findAll()
+                .limitRate(streamPrefetch);
     }
 
     public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+        return movieInfoRepository.findByYear(year)
+                .limitRate(streamPrefetch);
+    }
+
+
+    // Keyset ( cursor) pagination : the next page starts after the key of the last movie info of this page
+    // 1. sortBy "id" orders by _id, sortBy "year" by ( year, _id)
+    // 2. after : the nextCursor of the previous page, null for the first page. The cursor is opaque to the client
+    // 3. Unlike skip/limit every page is an index range scan, so page 10000 costs the same as page 1
+    // Note : _id ordering assumes all ids have the same type ( generated ObjectIds), Mongo does not compare ids of different types
+    public Mono<MovieInfoPage> getMovieInfosPage(String sortBy, int limit, String after) {
+        return getMovieInfosPage(sortBy, limit, after, null);
+    }
+
+    // fields : optional projection ( refer FieldProjection). The keys of the sort order are always returned, they make up the cursor
+    public Mono<MovieInfoPage> getMovieInfosPage(String sortBy, int limit, String after, String fields) {
+
+        var pageSize = Math.min(Math.max(limit, 1), pageMaxLimit);
+        var byYear = "year".equals(sortBy);
+        var sort = byYear ? Sort.by("year", "movieInfoID") : Sort.by("movieInfoID");
+        var pageable = PageRequest.of(0, pageSize + 1, sort);   // one more than asked for : tells whether there is a next page
+        var cursor = after != null ? PageCursor.decode(after, byYear) : null;
+
+        Flux<MovieInfo> movieInfos;
+        if (fields != null) {
+            // same queries as the repository methods below, with the projection added
+            var criteria = cursor == null ? new Criteria()
+                    : byYear ? new Criteria().orOperator(
+                            Criteria.where("year").gt(cursor.getYear()),
+                            Criteria.where("year").is(cursor.getYear()).and("movieInfoID").gt(cursor.getMovieInfoID()))
+                    : Criteria.where("movieInfoID").gt(cursor.getMovieInfoID());
+            var query = FieldProjection.parse(fields)
+                    .applyTo(Query.query(criteria).with(pageable), byYear ? new String[]{"year", "movieInfoID"} : new String[]{"movieInfoID"});
+            movieInfos = reactiveMongoTemplate.find(query, MovieInfo.class);
+        } else if (cursor == null) {
+            movieInfos = movieInfoRepository.findAllBy(pageable);
+        } else {
+            movieInfos = byYear
+                    ? movieInfoRepository.findByYearGreaterThanOrYearAndMovieInfoIDGreaterThan(cursor.getYear(), cursor.getYear(), cursor.getMovieInfoID(), pageable)
+                    : movieInfoRepository.findByMovieInfoIDGreaterThan(cursor.getMovieInfoID(), pageable);
+        }
+
+        return movieInfos
+                .collectList()
+                .map(page -> {
+                    if (page.size() <= pageSize) {
+                        return new MovieInfoPage(page, null);   // last page
+                    }
+                    var items = page.subList(0, pageSize);
+                    return new MovieInfoPage(items, PageCursor.encode(items.get(pageSize - 1), byYear));
+                });
     }
 
     public Mono<MovieInfo> getMovieInfoByName(String name) {
@@ -36,8 +112,44 @@ public class MoviesInfoService {
         return movieInfoRepository.findById(id);
     }
 
+    // single $in query on _id for all the passed in ids. Ids which do not exist are not part of the result
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids) {
+        return movieInfoRepository.findAllById(ids);
+    }
+
+
+    // Projected variants of the reads above : only the fields asked for are returned. Refer FieldProjection
+    // An unknown field is reported as 400 Bad Request
+    public Flux<MovieInfo> getAllMovieInfos(String fields) {
+        return findProjected(new Criteria(), fields)
+                .limitRate(streamPrefetch);
+    }
+
+    public Flux<MovieInfo> getMovieInfoByYear(Integer year, String fields) {
+        return findProjected(Criteria.where("year").is(year), fields)
+                .limitRate(streamPrefetch);
+    }
+
+    public Mono<MovieInfo> getMovieInfoByName(String name, String fields) {
+        return findProjected(Criteria.where("name").is(name), fields).next();
+    }
+
+    public Mono<MovieInfo> getMovieInfoByID(String id, String fields) {
+        return findProjected(Criteria.where("movieInfoID").is(id), fields).next();
+    }
+
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids, String fields) {
+        return findProjected(Criteria.where("movieInfoID").in(ids), fields);
+    }
+
+    private Flux<MovieInfo> findProjected(Criteria criteria, String fields) {
+        return Flux.defer(() -> reactiveMongoTemplate.find(FieldProjection.parse(fields).applyTo(Query.query(criteria)), MovieInfo.class));
+    }
+
+    // Replace the fields of a movie info. Empty if there is no movie info with this id
     public Mono<MovieInfo>  updateMovieInfo(MovieInfo movieInfo, String id) {
 
+        /*
         return movieInfoRepository.findById(id)
                 .flatMap(movieInfo1 -> {  // transform on element of a reactive stream to a flux
                     movieInfo1.setYear(movieInfo.getYear());
@@ -47,6 +159,51 @@ public class MoviesInfoService {
                     return movieInfoRepository.save(movieInfo1);   // save and return the updated Movie Info
 
                 });
+        */
+        // Moved to the single round trip update below : the above reads the document and writes all of it back ( 2 round trips),
+        // and a concurrent update between the read and the write is lost
+        var update = new Update()
+                .set("name", movieInfo.getName())
+                .set("year", movieInfo.getYear())
+                .set("cast", movieInfo.getCast())
+                .set("release_Date", movieInfo.getRelease_Date());
+        return findAndModify(id, movieInfo.getVersion(), update);
+    }
+
+
+    // Change only the fields present in the patch. Empty if there is no movie info with this id
+    public Mono<MovieInfo> patchMovieInfo(MovieInfoPatch patch, String id) {
+
+        var update = new Update();
+        if (patch.getName() != null) update.set("name", patch.getName());
+        if (patch.getYear() != null) update.set("year", patch.getYear());
+        if (patch.getCast() != null) update.set("cast", patch.getCast());
+        if (patch.getRelease_Date() != null) update.set("release_Date", patch.getRelease_Date());
+        return findAndModify(id, patch.getVersion(), update);
+    }
+
+
+    // One findAndModify : match, $set the changed fields, $inc the version and return the new document, atomically in one round trip
+    // expectedVersion ( optional) : only update if nobody else has updated the document since it was read, else 409 Conflict
+    private Mono<MovieInfo> findAndModify(String id, Long expectedVersion, Update update) {
+
+        var criteria = Criteria.where("movieInfoID").is(id);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        update.inc("version", 1);
+
+        var updated = reactiveMongoTemplate.findAndModify(Query.query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+
+        if (expectedVersion == null) {
+            return updated;
+        }
+        // no match : either the document does not exist ( empty -> 404) or its version has moved on ( 409)
+        return updated.switchIfEmpty(Mono.defer(() -> movieInfoRepository.existsById(id)
+                .flatMap(exists -> exists
+                        ? Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "MovieInfo " + id + " has been updated since version " + expectedVersion))
+                        : Mono.empty())));
     }
 
 
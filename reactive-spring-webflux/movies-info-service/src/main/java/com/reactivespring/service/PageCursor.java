@@ -0,0 +1,40 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Key of the last movie info of a page, handed to the client as an opaque ( base64) cursor. Refer MoviesInfoService.getMovieInfosPage
+// "i|<id>" for pages ordered by _id, "y|<year>|<id>" for pages ordered by ( year, _id)
+@Getter
+@AllArgsConstructor
+class PageCursor {
+
+    private final Integer year;
+    private final String movieInfoID;
+
+    static String encode(MovieInfo last, boolean byYear) {
+        var key = byYear ? "y|" + last.getYear() + "|" + last.getMovieInfoID() : "i|" + last.getMovieInfoID();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String cursor, boolean byYear) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+            if (byYear && parts.length == 3 && parts[0].equals("y")) {
+                return new PageCursor(Integer.valueOf(parts[1]), parts[2]);
+            }
+            if (!byYear && parts.length == 2 && parts[0].equals("i")) {
+                return new PageCursor(null, parts[1]);
+            }
+        } catch (IllegalArgumentException ex) {   // also NumberFormatException
+            // reported below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor for this sort order : " + cursor);
+    }
+}
@@ -1,6 +1,9 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.BulkIngestSummary;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoPatch;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,6 +13,8 @@ import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -54,7 +59,7 @@ class MoviesInfoControllerTest {
                 new MovieInfo(null, "The Dark Knight",
                         2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
                 new MovieInfo("abc", "Dark Knight Rises",
-                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), 0L));   // version 0, refer patchMovieInfo()
 
 
         movieInfoRepository.saveAll(movieinfos)
@@ -108,6 +113,29 @@ class MoviesInfoControllerTest {
         //then
     }
 
+    @Test
+    void addMovieInfo_existingId() {
+
+        //given : "abc" was stored in setUp()
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy", "Anne Hathaway"), LocalDate.parse("2012-07-20"));
+
+        //when : POST replaces the movie info with the same id
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        //then
+        var savedMovieInfo = movieInfoRepository.findById("abc").block();
+        assert savedMovieInfo != null;
+        assertEquals(3, savedMovieInfo.getCast().size());
+        assertEquals(3L, movieInfoRepository.count().block());
+    }
+
     @Test
     void getAllMovieInfos() {
 
@@ -218,6 +246,174 @@ class MoviesInfoControllerTest {
 
     }
 
+    @Test
+    void getMovieInfosByIds() {
+
+        //given
+        var ids = List.of("abc", "def");   // "def" does not exist and is left out of the response
+
+        //when
+
+        //then
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/batch")
+                .bodyValue(ids)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> {
+                    assertEquals(1, movieInfos.size());
+                    assertEquals("abc", movieInfos.get(0).getMovieInfoID());
+                });
+
+    }
+
+    @Test
+    void bulkInsertMovieInfos() {
+
+        //given
+        var ndjson = String.join("\n",
+                "{\"name\":\"Batman Forever\",\"year\":1995,\"cast\":[\"Val Kilmer\"],\"release_Date\":\"1995-06-16\"}",
+                "{\"name\":\"Batman Returns\",\"year\":1992,\"cast\":[\"Michael Keaton\"],\"release_Date\":\"1992-06-19\"}",
+                "{\"name\":\"\",\"year\":-1,\"cast\":[\"Nobody\"]}",   // invalid : blank name, negative year
+                "{\"movieInfoID\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012,\"cast\":[\"Christian Bale\"]}");   // duplicate id
+
+        //when
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(ndjson)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(BulkIngestSummary.class)
+                .value(summary -> {
+                    assertEquals(4, summary.getReceived());
+                    assertEquals(2, summary.getInserted());
+                    assertEquals(1, summary.getInvalid());
+                    assertEquals(1, summary.getFailed());
+                    assertEquals(2, summary.getBatches().get(0).getErrors().size());
+                });
+
+        //then
+        StepVerifier.create(movieInfoRepository.findAll())
+                .expectNextCount(5)   // 3 from setUp + 2 inserted
+                .verifyComplete();
+    }
+
+    @Test
+    void getAllMovieInfos_projection() {
+
+        //then
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name,year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(String.class)
+                .value(json -> {
+                    assertTrue(json.contains("\"name\":\"Batman Begins\""));
+                    assertTrue(json.contains("\"year\":2005"));
+                    assertFalse(json.contains("cast"));   // not asked for : neither read nor serialized
+                    assertFalse(json.contains("movieInfoID"));
+                });
+    }
+
+    @Test
+    void getMovieInfosByIdsBody_projection() {
+
+        //then
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/batch?fields=name")
+                .bodyValue(List.of("abc", "xyz"))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(String.class)
+                .value(json -> {
+                    assertTrue(json.contains("\"name\":\"Dark Knight Rises\""));
+                    assertFalse(json.contains("cast"));   // not asked for : neither read nor serialized
+                    assertFalse(json.contains("year"));
+                });
+    }
+
+    @Test
+    void getAllMovieInfos_unknownField() {
+
+        //then
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name,budget")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getMovieInfosPage() {
+
+        //given
+        var firstPageUri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URL + "/page")
+                .queryParam("sort", "year")
+                .queryParam("limit", 2)
+                .buildAndExpand().toUri();
+
+        //when
+        var firstPage = webTestClient
+                .get()
+                .uri(firstPageUri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfoPage.class)
+                .returnResult()
+                .getResponseBody();
+
+        //then
+        assert firstPage != null;
+        assertEquals(2, firstPage.getItems().size());
+        assertEquals(2005, firstPage.getItems().get(0).getYear());
+        assertEquals(2008, firstPage.getItems().get(1).getYear());
+        assertNotNull(firstPage.getNextCursor());
+
+        var secondPageUri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URL + "/page")
+                .queryParam("sort", "year")
+                .queryParam("limit", 2)
+                .queryParam("after", firstPage.getNextCursor())
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(secondPageUri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfoPage.class)
+                .value(secondPage -> {
+                    assertEquals(1, secondPage.getItems().size());
+                    assertEquals("abc", secondPage.getItems().get(0).getMovieInfoID());
+                    assertNull(secondPage.getNextCursor());   // last page
+                });
+    }
+
+    @Test
+    void getMovieInfosPage_invalidCursor() {
+
+        //then
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/page?after=not-a-cursor")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getAllMovieInfosForYear() {
 
@@ -326,6 +522,51 @@ class MoviesInfoControllerTest {
 
 
 
+    @Test
+    void patchMovieInfo() {
+
+        //given
+        var id = "abc";
+        var patch = new MovieInfoPatch(null, 2013, null, null, 0L);   // only the year, as of version 0
+
+        //then
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .value(movieInfo -> {
+                    assertEquals(2013, movieInfo.getYear());
+                    assertEquals("Dark Knight Rises", movieInfo.getName());   // untouched
+                    assertEquals(1L, movieInfo.getVersion());
+                });
+
+        // same version again : somebody else's update has been applied in the meantime
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", id)
+                .bodyValue(patch)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void patchMovieInfo_NotFound() {
+
+        //then
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "/{id}", "def")
+                .bodyValue(new MovieInfoPatch("Gotham", null, null, null, null))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void updateMovieInfo_NotFound() {
 
@@ -0,0 +1,130 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.config.MongoIndexInitializer;
+import com.reactivespring.domain.MovieInfo;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Calls every query method of MovieInfoRepository with the Mongo profiler on ( level 2 : every operation) and fails when the
+// planSummary of a query it sent is not an index scan. The query methods are found by reflection : a new query method
+// without a call in QUERY_METHODS fails the test as well
+@DataMongoTest
+@Import(MongoIndexInitializer.class)   // creates the declared indexes
+@TestPropertySource(properties = "spring.mongodb.embedded.version=3.5.5")   // need to include this else test case wil fail
+@ActiveProfiles("test")
+class MovieInfoQueryPlanTest {
+
+    private static final String PROFILE = "system.profile";
+
+    // method name -> a call of it, with the arguments MoviesInfoService passes
+    private static final Map<String, Function<MovieInfoRepository, Publisher<?>>> QUERY_METHODS = Map.of(
+            "findByYear", repository -> repository.findByYear(2005),
+            "findByName", repository -> repository.findByName("Batman Begins"),
+            "findAllBy", repository -> Flux.concat(
+                    repository.findAllBy(PageRequest.of(0, 51, Sort.by("movieInfoID"))),
+                    repository.findAllBy(PageRequest.of(0, 51, Sort.by("year", "movieInfoID")))),
+            "findByMovieInfoIDGreaterThan", repository -> repository.findByMovieInfoIDGreaterThan("abc", PageRequest.of(0, 51, Sort.by("movieInfoID"))),
+            "findByYearGreaterThanOrYearAndMovieInfoIDGreaterThan", repository -> repository.findByYearGreaterThanOrYearAndMovieInfoIDGreaterThan(
+                    2005, 2005, "abc", PageRequest.of(0, 51, Sort.by("year", "movieInfoID"))));
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // a query on a collection which does not exist is planned as EOF, not as a scan
+        movieInfoRepository.saveAll(List.of(
+                        new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                        new MovieInfo(null, "The Dark Knight", 2008, List.of("Christian Bale", "Heath Ledger"), LocalDate.parse("2008-07-18")),
+                        new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))))
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        setProfilingLevel(0);
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void everyQueryMethodUsesAnIndex() {
+
+        var failures = new ArrayList<String>();
+
+        for (var method : queryMethods()) {
+            var call = QUERY_METHODS.get(method.getName());
+            if (call == null) {
+                failures.add(method.getName() + " : no call in QUERY_METHODS");
+                continue;
+            }
+
+            var planSummaries = planSummaries(call);
+            if (planSummaries.isEmpty()) {
+                failures.add(method.getName() + " : sent no query");
+            }
+            planSummaries.stream()
+                    .filter(planSummary -> planSummary == null || !planSummary.contains("IXSCAN") || planSummary.contains("COLLSCAN"))
+                    .forEach(planSummary -> failures.add(method.getName() + " : " + planSummary));
+        }
+
+        assertTrue(failures.isEmpty(), "Queries which do not use an index : " + failures);
+    }
+
+    // query methods declared by MovieInfoRepository itself, the inherited CRUD methods go by _id
+    private static List<Method> queryMethods() {
+        return Arrays.stream(MovieInfoRepository.class.getDeclaredMethods())
+                .filter(method -> !method.isDefault() && !method.isSynthetic() && !Modifier.isStatic(method.getModifiers()))
+                .collect(Collectors.toList());
+    }
+
+    // planSummary of every query the call sent, read back from the profiler
+    private List<String> planSummaries(Function<MovieInfoRepository, Publisher<?>> call) {
+
+        setProfilingLevel(0);
+        reactiveMongoTemplate.dropCollection(PROFILE).block();   // only the queries of this call are left in it
+        setProfilingLevel(2);
+
+        Flux.from(call.apply(movieInfoRepository)).blockLast();
+
+        setProfilingLevel(0);
+
+        var namespace = reactiveMongoTemplate.getMongoDatabase().block().getName() + "." + reactiveMongoTemplate.getCollectionName(MovieInfo.class);
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("ns").is(namespace).and("op").is("query")), Document.class, PROFILE)
+                .map(operation -> operation.getString("planSummary"))
+                .collectList()
+                .block();
+    }
+
+    private void setProfilingLevel(int level) {
+        reactiveMongoTemplate.executeCommand(new Document("profile", level)).block();
+    }
+}
@@ -0,0 +1,73 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.bson.BsonTimestamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "spring.mongodb.embedded.version=4.0.2",   // change streams need MongoDB 3.6+
+        "spring.mongodb.embedded.storage.repl-set-name=rs0",   // ... running as a replica set
+        "movieinfo.feed.mode=changeStream"
+})
+class ChangeStreamMovieInfoFeedIntgTest {
+
+    @Autowired
+    MovieInfoFeed movieInfoFeed;
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void insertUpdateDeleteAreStreamed() {
+
+        //given
+        // resume from just before the changes, so none of them is missed while the change stream is being opened
+        var beforeChanges = new BsonTimestamp((int) Instant.now().minusSeconds(1).getEpochSecond(), 0).getValue();
+
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        //when
+        movieInfoRepository.save(movieInfo).block();
+        movieInfo.setYear(2013);
+        movieInfoRepository.save(movieInfo).block();
+        movieInfoRepository.deleteById("abc").block();
+
+        //then
+        StepVerifier.create(movieInfoFeed.subscribe(beforeChanges).take(3))
+                .assertNext(event -> {
+                    assert event.getOperation().equals(SequencedMovieInfo.INSERT);
+                    assert event.getMovieInfo().getYear() == 2012;
+                })
+                .assertNext(event -> {
+                    assert event.getOperation().equals(SequencedMovieInfo.UPDATE);
+                    assert event.getMovieInfo().getYear() == 2013;
+                })
+                .assertNext(event -> {
+                    assert event.getOperation().equals(SequencedMovieInfo.DELETE);
+                    assert event.getMovieInfo().getMovieInfoID().equals("abc");
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+    }
+}
@@ -3,6 +3,8 @@ package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.service.MovieInfoBulkService;
+import com.reactivespring.service.MovieInfoFeed;
 import com.reactivespring.service.MoviesInfoService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +54,12 @@ public class MoviesInfoControllerUnitTest {
     @MockBean
     private MoviesInfoService moviesInfoServiceMock;
 
+    @MockBean
+    private MovieInfoFeed movieInfoFeedMock;   // the controller publishes to the feed, not used by these tests
+
+    @MockBean
+    private MovieInfoBulkService movieInfoBulkServiceMock;   // not used by these tests
+
     @Test
     void getAllMoviesInfo(){
 
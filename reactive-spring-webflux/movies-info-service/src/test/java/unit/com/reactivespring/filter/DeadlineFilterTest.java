@@ -0,0 +1,79 @@
+package com.reactivespring.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+public class DeadlineFilterTest {
+
+    AtomicBoolean cancelled = new AtomicBoolean();
+
+    // a handler taking 300 ms, e.g. a slow Mongo query
+    WebTestClient webTestClient = WebTestClient
+            .bindToRouterFunction(RouterFunctions.route(GET("/slow"), request -> Mono.delay(Duration.ofMillis(300))
+                    .doOnCancel(() -> cancelled.set(true))
+                    .flatMap(tick -> ServerResponse.ok().bodyValue("done"))))
+            .webFilter(new DeadlineFilter())
+            .build();
+
+    @Test
+    void expiredDeadline() {
+
+        webTestClient
+                .get()
+                .uri("/slow")
+                .header(DeadlineFilter.TIMEOUT_HEADER, "50")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+
+        assert cancelled.get();   // the cancellation reached the handler
+    }
+
+    @Test
+    void deadlineAlreadyPassed() {
+
+        webTestClient
+                .get()
+                .uri("/slow")
+                .header(DeadlineFilter.TIMEOUT_HEADER, "0")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    void withinDeadline() {
+
+        webTestClient
+                .get()
+                .uri("/slow")
+                .header(DeadlineFilter.TIMEOUT_HEADER, "5000")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(String.class)
+                .isEqualTo("done");
+    }
+
+    @Test
+    void noHeaderNoDeadline() {
+
+        webTestClient
+                .get()
+                .uri("/slow")
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        assert !cancelled.get();
+    }
+}
@@ -0,0 +1,57 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class InMemoryMovieInfoFeedTest {
+
+    @Test
+    void replayIsBoundedByCount() {
+
+        //given
+        var movieInfoFeed = new InMemoryMovieInfoFeed(2, 300);
+        movieInfoFeed.publish(movieInfo("Batman Begins"));
+        movieInfoFeed.publish(movieInfo("The Dark Knight"));
+        movieInfoFeed.publish(movieInfo("Dark Knight Rises"));
+
+        //then
+        StepVerifier.create(movieInfoFeed.subscribe(null).map(event -> event.getMovieInfo().getName()))
+                .expectNext("The Dark Knight", "Dark Knight Rises")   // the oldest event is no longer retained
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resumeAfterLastSeenSequence() {
+
+        //given
+        var movieInfoFeed = new InMemoryMovieInfoFeed(10, 300);
+        movieInfoFeed.publish(movieInfo("Batman Begins"));
+        movieInfoFeed.publish(movieInfo("The Dark Knight"));
+        movieInfoFeed.publish(movieInfo("Dark Knight Rises"));
+        var seqs = movieInfoFeed.subscribe(null).map(SequencedMovieInfo::getSeq).take(3).collectList().block();
+        var lastSeen = seqs.get(1);
+
+        //then
+        StepVerifier.create(movieInfoFeed.subscribe(lastSeen))
+                .assertNext(event -> {
+                    assert event.getSeq() == lastSeen + 1;
+                    assert event.getMovieInfo().getName().equals("Dark Knight Rises");
+                })
+                .then(() -> movieInfoFeed.publish(movieInfo("Batman Forever")))   // live events follow the replayed ones
+                .assertNext(event -> {
+                    assert event.getSeq() == lastSeen + 2;
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    private static MovieInfo movieInfo(String name) {
+        return new MovieInfo(null, name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.reactivespring.config;
+
+import com.reactivespring.service.ReviewStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// One-off backfill of the ReviewStats of every movie from its reviews ( refer ReviewStatsService.backfillOnce)
+// ReviewStatsService only counts the reviews written through it : reviews stored before the stats existed would otherwise never show up
+// in /v1/reviews/stats or /v1/reviews/top
+// Off by default. Turn it on ( reviews.stats.backfillOnStartup=true) for the deploy which introduces the stats, or raise
+// reviews.stats.backfillGeneration to run it again. It runs once per generation, on the first instance that starts, and not on every restart
+// It runs in the background once the application is ready, startup does not wait for it. The aggregation replaces the stats of every movie :
+// a review written while it runs can be counted twice or not at all, so start it while the reviews take few or no writes
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "reviews.stats.backfillOnStartup", havingValue = "true")
+public class ReviewStatsInitializer {
+
+    private final ReviewStatsService reviewStatsService;
+
+    private final String generation;
+
+    private final Duration timeout;
+
+    public ReviewStatsInitializer(ReviewStatsService reviewStatsService,
+                                  @Value("${reviews.stats.backfillGeneration:1}") String generation,
+                                  @Value("${reviews.stats.backfillTimeoutSeconds:600}") long timeoutSeconds) {
+        this.reviewStatsService = reviewStatsService;
+        this.generation = generation;
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        reviewStatsService.backfillOnce(generation, timeout)
+                .subscribe(ran -> { },
+                        ex -> log.error("Review stats backfill {} failed, it runs again on the next start : {}", generation, ex.getMessage()));
+    }
+}
@@ -4,15 +4,25 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// Indexes are created at startup by MongoIndexInitializer
+// ( movieInfoId, rating, _id) serves the lookups by movie and returns the reviews of a movie ordered by rating, _id is the tie breaker of the keyset pages
+// ( movieInfoId, createdAt, _id) returns the reviews of a movie newest first. Refer ReviewPageService
+@CompoundIndexes({
+        @CompoundIndex(name = "movieInfoId_rating_id", def = "{'movieInfoId': 1, 'rating': -1, '_id': -1}"),
+        @CompoundIndex(name = "movieInfoId_createdAt_id", def = "{'movieInfoId': 1, 'createdAt': -1, '_id': -1}")
+})
 public class Review {
 
     @Id
@@ -23,4 +33,9 @@ public class Review {
     //@Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     @Min(value = 0L, message = "rating.negative : please pass a non-negative value")
     private Double rating;
+    private Instant createdAt;   // set by the service when the review is added, reviews stored before have none
+
+    public Review(String reviewId, String movieInfoId, String comment, Double rating) {
+        this(reviewId, movieInfoId, comment, rating, null);
+    }
 }
@@ -0,0 +1,36 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Rating aggregates of one movie, kept current by ReviewStatsService on every review write ( /v1/reviews/stats/{movieInfoId})
+// The movieInfoId is the _id, so reading the stats of a movie is a single document lookup instead of an aggregation over its reviews
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private String movieInfoId;
+    private long count;   // number of rated reviews
+    private double sum;
+    private Double min;
+    private Double max;
+    private Map<String, Long> histogram = new HashMap<>();   // number of reviews per rating bucket, the bucket of a rating is its integer part : 8.5 -> "8"
+
+    // not stored, derived from count and sum
+    public Double getAverage() {
+        return count > 0 ? sum / count : null;
+    }
+
+    public static ReviewStats empty(String movieInfoId) {
+        return new ReviewStats(movieInfoId, 0, 0, null, null, new HashMap<>());
+    }
+}
@@ -0,0 +1,16 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One entry of the top rated movies ( /v1/reviews/top). Entries held by TopRatedMovies are replaced, never modified
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopRatedMovie {
+
+    private String movieInfoId;
+    private double averageRating;
+    private long reviewCount;
+}
@@ -7,6 +7,7 @@ import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
 import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
@@ -44,6 +45,13 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
             return exchange.getResponse().writeWith(Mono.just(errorMessage)); // Build response body using the error message from ReviewHandler.validate thrown by "throw new ReviewDataException(errorMessage)"
         }
 
+        // If exception type is ResponseStatusException( e.g. thrown from DeadlineFilter when the caller's deadline has passed) keep its status
+        if(ex instanceof ResponseStatusException){
+            var responseStatusException = (ResponseStatusException) ex;
+            exchange.getResponse().setStatusCode(responseStatusException.getStatus());
+            return exchange.getResponse().writeWith(Mono.just(dataBufferFactory.wrap(String.valueOf(responseStatusException.getReason()).getBytes())));
+        }
+
         // in case of any other errors return Internal Server Error
         exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
         return exchange.getResponse().writeWith(Mono.just(errorMessage)); // Build response body using the error message from ReviewHandler.validate thrown by "throw new ReviewDataException(errorMessage)"
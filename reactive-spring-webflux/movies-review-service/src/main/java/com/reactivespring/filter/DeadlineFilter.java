@@ -0,0 +1,52 @@
+package com.reactivespring.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// Honors the deadline passed by the caller ( movies-service sends its remaining budget in the X-Request-Timeout-Millis header)
+// 1. Without the header the request is handled as before
+// 2. With the header the whole handling pipeline is cancelled once the budget runs out. The cancellation travels up to the
+//    repository, so the Mongo query / cursor is closed instead of producing results nobody is waiting for
+// 3. The caller gets a 504 Gateway Timeout ( if the response has not been started yet)
+@Component
+@Slf4j
+public class DeadlineFilter implements WebFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Millis";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        var callerTimeout = exchange.getRequest().getHeaders().getFirst(TIMEOUT_HEADER);
+        if (callerTimeout == null) {
+            return chain.filter(exchange);
+        }
+
+        long budgetMillis;
+        try {
+            budgetMillis = Long.parseLong(callerTimeout);
+        } catch (NumberFormatException ex) {
+            log.info("Ignoring invalid {} header : {}", TIMEOUT_HEADER, callerTimeout);
+            return chain.filter(exchange);
+        }
+
+        if (budgetMillis <= 0) {
+            return Mono.error(deadlineExceeded());   // the caller has already given up, do not even start
+        }
+
+        return chain.filter(exchange)
+                .timeout(Duration.ofMillis(budgetMillis), Mono.error(DeadlineFilter::deadlineExceeded));
+    }
+
+    private static ResponseStatusException deadlineExceeded() {
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Request deadline exceeded");
+    }
+}
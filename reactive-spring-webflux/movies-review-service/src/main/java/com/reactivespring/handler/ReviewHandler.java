@@ -1,11 +1,20 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewPageService;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.service.ReviewWriteBatcher;
+import com.reactivespring.service.TopRatedMovies;
+import com.reactivespring.stream.ReviewStreamRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -15,8 +24,14 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
+import javax.annotation.PostConstruct;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 
@@ -27,6 +42,27 @@ public class ReviewHandler  {
     @Autowired
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired   // keeps the per movie rating aggregates current on every review write
+    private ReviewStatsService reviewStatsService;
+
+    @Autowired
+    private TopRatedMovies topRatedMovies;
+
+    @Autowired
+    private ReviewPageService reviewPageService;
+
+    @Autowired(required = false)   // only there when reviews.writeBehind.enabled=true
+    private ReviewWriteBatcher reviewWriteBatcher;
+
+    @Autowired   // live reviews per movie ( /v1/reviews/stream/{movieInfoId})
+    private ReviewStreamRegistry reviewStreamRegistry;
+
+    @Value("${reviews.stream.replay.maxEvents:1000}")   // reviews replayed to a new subscriber of /v1/reviews/stream
+    private int replayMaxEvents;
+
+    @Value("${reviews.stream.prefetch:256}")   // max number of reviews requested from the Mongo cursor at a time
+    private int streamPrefetch;
+
     // Note : Validation annotations @Valid ( refer MoviesInfoController.updateMovieInfo) cannot be used in functional web
     // We have to explicitly use the validator instead of using annotations in functional web
     @Autowired
@@ -34,10 +70,16 @@ public class ReviewHandler  {
 
 
     //Publish & Subscribe : Sink publishes multiple events and will replay all events once a subscriber is connected to it
-    Sinks.Many<Review> reviewsSink = Sinks.many().replay().all();
+    // replay().limit() : only the last replayMaxEvents reviews are kept, replay().all() kept every review ever published in memory
+    Sinks.Many<Review> reviewsSink;
     //Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().latest(); //// replay().latest() -> First subscriber will get all and subsequently only the latest event will be streamed to all subscriber.
 
 
+    @PostConstruct
+    void createReviewsSink() {
+        reviewsSink = Sinks.many().replay().limit(replayMaxEvents);
+    }
+
     public Mono<ServerResponse> addReview(ServerRequest request) {
         // Now map the Mono returned above as a Server Response
         return request.bodyToMono(Review.class)       // Extract request body containing Review object as Mono
@@ -45,7 +87,8 @@ public class ReviewHandler  {
                 // doOnNext is a side effect function which can perform validations on the extracted class
                 // we will apply bean validation and if any validation fails, we will break teh flow and throw an exception
                 .doOnNext(this::validate)
-               .flatMap(reviewReactiveRepository::save)   // we are doing a save operation on teh Mono above and returning the value. Save is a reactive operation and so we have to use flatMap operator
+                .doOnNext(ReviewHandler::stampCreatedAt)
+               .flatMap(this::store)   // we are doing a save operation on teh Mono above and returning the value. Save is a reactive operation and so we have to use flatMap operator
                .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);  // map the Mono returned above to a Server Response
 
     }
@@ -72,6 +115,36 @@ public class ReviewHandler  {
         throw new ReviewDataException(errorMessage);
     }
 
+    // Saves a new review and counts its rating into the stats of the movie
+    // With write behind on, the review is queued and written together with other reviews ( refer ReviewWriteBatcher), which also updates the stats
+    private Mono<Review> store(Review review) {
+        var savedReview = reviewWriteBatcher != null
+                ? reviewWriteBatcher.write(review)
+                : saveAndCount(review);
+        return savedReview
+                .doOnNext(reviewStreamRegistry::publish);   // to the live subscribers of the movie
+    }
+
+    // save() is an upsert : a review posted with the id of a stored review replaces it, so its old rating leaves the stats instead of being counted twice
+    private Mono<Review> saveAndCount(Review review) {
+        var previousReview = review.getReviewId() != null
+                ? reviewReactiveRepository.findById(review.getReviewId()).map(ReviewHandler::copyOf)
+                : Mono.<Review>empty();
+        return previousReview
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(previous -> reviewReactiveRepository.save(review)
+                        .flatMap(saved -> previous
+                                .map(previousValues -> reviewStatsService.replace(previousValues, saved))
+                                .orElseGet(() -> reviewStatsService.add(saved))
+                                .thenReturn(saved)));
+    }
+
+    // Millis : what Mongo stores, so the review returned by the save is the same as the one read back
+    private static void stampCreatedAt(Review review) {
+        review.setCreatedAt(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+    }
+
     public Mono<ServerResponse> addReview_2(ServerRequest request) {
         // Now map the Mono returned above as a Server Response
         var reviewToBeSaved = request.bodyToMono(Review.class);
@@ -90,13 +163,14 @@ public class ReviewHandler  {
     public Mono<ServerResponse> getReviewbyMovieId_QueryParm(ServerRequest request) {
 
         // First extract the movieInfoID provided in the query parm withthe request
-        // Note: For some weird reason we have to place a space or any character in front of the query parameter while making teh rest call !!! So instead of 'movieInfoId' use ' movieInfoId' as quey key.
         var movieInfoId= request.queryParam("movieInfoId");
 
         //queryParam() function above returns an optional of String, enabling to check whether the value is present or not
         if(movieInfoId.isPresent()){
             //var reviewsFlux = reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));  // extract long value from string
-            var reviewsFlux  = reviewReactiveRepository.findReviewsByMovieInfoId(String.valueOf(movieInfoId));
+            // movieInfoId.get() : String.valueOf(movieInfoId) gave "Optional[1]", which never matches a review
+            var reviewsFlux  = reviewReactiveRepository.findReviewsByMovieInfoId(movieInfoId.get())
+                    .limitRate(streamPrefetch);   // the Mongo cursor fetches reviews as the client reads them, not all at once
             return buildServerResponseMono(reviewsFlux);
         }else{  // if the movieInfo for the supplied info is not found, then get all reviews
             var reviewsFlux = reviewReactiveRepository.findAll();
@@ -107,6 +181,59 @@ public class ReviewHandler  {
 
     }
 
+    // Reviews of a movie one page at a time : GET /v1/reviews/movie/{movieInfoId}?sort=rating&limit=50&after=<nextCursor of the previous page>
+    // sort is "recent" ( default, newest first) or "rating" ( highest first). Refer ReviewPageService
+    public Mono<ServerResponse> getReviewsPage(ServerRequest request) {
+
+        var movieInfoId = request.pathVariable("movieInfoId");
+        var sort = request.queryParam("sort").orElse("recent");
+        var limit = intQueryParam(request, "limit", 50);
+        var after = request.queryParam("after").orElse(null);
+
+        return reviewPageService.getReviewsPage(movieInfoId, sort, limit, after)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    // Get the reviews of many movies in one call : GET /v1/reviews/batch?movieInfoIds=1,2
+    public Mono<ServerResponse> getReviewsByMovieIds(ServerRequest request) {
+
+        var movieInfoIds = request.queryParams().getOrDefault("movieInfoIds", List.of())
+                .stream()
+                .flatMap(ids -> Arrays.stream(ids.split(",")))  // accept both movieInfoIds=1,2 and movieInfoIds=1&movieInfoIds=2
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+
+        return buildMovieReviewsResponse(movieInfoIds);
+    }
+
+    // POST variant for id lists which do not fit into a query string. Body is a json array of ids : ["1","2"]
+    public Mono<ServerResponse> getReviewsByMovieIdsBody(ServerRequest request) {
+
+        return request.bodyToMono(new ParameterizedTypeReference<List<String>>() {})
+                .defaultIfEmpty(List.of())
+                .flatMap(this::buildMovieReviewsResponse);
+    }
+
+    // 1. One $in query fetches the reviews of all the passed in movies, sorted by movieInfoId
+    // 2. bufferUntilChanged() groups the reviews of a movie as they stream past, so only one movie is held in memory at a time
+    // 3. Streamed as NDJSON, one MovieReviews per movie which has reviews
+    private Mono<ServerResponse> buildMovieReviewsResponse(List<String> movieInfoIds) {
+
+        if (movieInfoIds.isEmpty()) {
+            return Mono.error(new ReviewDataException("movieInfoIds : at least one movieInfoId must be present"));
+        }
+
+        var movieReviewsFlux = reviewReactiveRepository.findReviewsByMovieInfoIdIn(movieInfoIds, Sort.by("movieInfoId"))
+                .bufferUntilChanged(Review::getMovieInfoId)
+                .map(reviews -> new MovieReviews(reviews.get(0).getMovieInfoId(), reviews));
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(movieReviewsFlux, MovieReviews.class);
+    }
+
     private Mono<ServerResponse> buildServerResponseMono(Flux<Review> reviewsFlux) {
         return ServerResponse.ok().body(reviewsFlux, Review.class);  //body returns Mono
     }
@@ -122,7 +249,9 @@ public class ReviewHandler  {
         // Now access the review as passed in the request and update the values of the extracted review with it
         return existingReview
                 // flat map operation to return updated Review with values from the review passed in the request
-                .flatMap(review -> request.bodyToMono(Review.class)  // access the review passed in the request which contains the values to be updated
+                .flatMap(review -> {
+                    var previousReview = copyOf(review);   // the values before the update, the stats need the old rating
+                    return request.bodyToMono(Review.class)  // access the review passed in the request which contains the values to be updated
                 .map(reqReview -> {
                     review.setComment(reqReview.getComment());   //now map the extracted review with updated values passed in the request
                     review.setRating(reqReview.getRating());
@@ -131,8 +260,9 @@ public class ReviewHandler  {
                 })
                         // save the updated review and pass as a server response
                         .flatMap(reviewReactiveRepository::save)  // save the updated values
-                        .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview)) // map as a server response
-             );
+                        .flatMap(savedReview -> reviewStatsService.replace(previousReview, savedReview).thenReturn(savedReview))   // move the rating in the stats
+                        .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview)); // map as a server response
+                });
     }
 
 
@@ -146,7 +276,9 @@ public class ReviewHandler  {
         // Now access the review as passed in the request and update the values of the extracted review with it
         return existingReview
                 // flat map operation to return updated Review with values from the review passed in the request
-                .flatMap(review -> request.bodyToMono(Review.class)  // access the review passed in the request which contains the values to be updated
+                .flatMap(review -> {
+                    var previousReview = copyOf(review);   // the values before the update, the stats need the old rating
+                    return request.bodyToMono(Review.class)  // access the review passed in the request which contains the values to be updated
                         .map(reqReview -> {
                             review.setComment(reqReview.getComment());   //now map the extracted review with updated values passed in the request
                             review.setRating(reqReview.getRating());
@@ -155,11 +287,53 @@ public class ReviewHandler  {
                         })
                         // save the updated review and pass as a server response
                         .flatMap(reviewReactiveRepository::save)  // save the updated values
-                        .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview))) // map as a server response
+                        .flatMap(savedReview -> reviewStatsService.replace(previousReview, savedReview).thenReturn(savedReview))   // move the rating in the stats
+                        .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview)); // map as a server response
+                })
                 .switchIfEmpty(ServerResponse.notFound().build());
 
     }
 
+    private static Review copyOf(Review review) {
+        return new Review(review.getReviewId(), review.getMovieInfoId(), review.getComment(), review.getRating());
+    }
+
+    // Rating aggregates of a movie ( count, sum, min, max, histogram) : GET /v1/reviews/stats/{movieInfoId}
+    // Served from the ReviewStats document of the movie, a single document read whatever the number of reviews
+    public Mono<ServerResponse> getReviewStats(ServerRequest request) {
+
+        var movieInfoId = request.pathVariable("movieInfoId");
+
+        return reviewStatsService.getStats(movieInfoId)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    // Best rated movies : GET /v1/reviews/top?k=10&minCount=5
+    // Read from memory ( refer TopRatedMovies), no Mongo round trip unless minCount is above the tracked one
+    public Mono<ServerResponse> getTopRatedMovies(ServerRequest request) {
+
+        var k = intQueryParam(request, "k", 10);
+        var minCount = intQueryParam(request, "minCount", 1);
+        if (k <= 0 || minCount < 0) {
+            return Mono.error(new ReviewDataException("k : must be positive, minCount : must not be negative"));
+        }
+
+        return topRatedMovies.top(k, minCount)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    private static int intQueryParam(ServerRequest request, String name, int defaultValue) {
+        return request.queryParam(name)
+                .map(value -> {
+                    try {
+                        return Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new ReviewDataException(name + " : must be a number");
+                    }
+                })
+                .orElse(defaultValue);
+    }
+
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
 
         // First extract the path variable for review id from request
@@ -171,7 +345,8 @@ public class ReviewHandler  {
         // Now access the review as passed in the request and delete from repo
         return existingReview
                 // delete review and return no content response.
-                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId))  // delete teh review by id. Return a Mono<vvoid
+                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId)  // delete teh review by id. Return a Mono<vvoid
+                        .then(reviewStatsService.remove(review)))   // take the rating out of the stats of the movie
                 .then(ServerResponse.noContent().build());  // Since delte will return a Mono<void> which is nothing, we will substitiute wit a no Content Response
 
 
@@ -185,7 +360,8 @@ public class ReviewHandler  {
                     // doOnNext is a side effect function which can perform validations on the extracted class
                     // we will apply bean validation and if any validation fails, we will break teh flow and throw an exception
                     .doOnNext(this::validate)
-                    .flatMap(reviewReactiveRepository::save)   // we are doing a save operation on the Mono above and returning the value. Save is a reactive operation and so we have to use flatMap operator
+                    .doOnNext(ReviewHandler::stampCreatedAt)
+                    .flatMap(this::store)   // we are doing a save operation on the Mono above and returning the value. Save is a reactive operation and so we have to use flatMap operator
                     // 1. Access the saved review using donOnNext() Operator
                     // 2. Publish the review : Manual triggering using tryEmitNext()
                     // 3. tryEventNext() automatically takes care of the Failure Handler and so no explicit FailureHandler is required
@@ -216,6 +392,20 @@ public class ReviewHandler  {
                 .body(reviewsSink.asFlux(), Review.class)
                 .log();
     }
-}
 
 
+    // Live reviews of one movie : GET /v1/reviews/stream/{movieInfoId}?overflow=latest
+    // Only new reviews of the movie are streamed, as NDJSON. overflow ( drop, latest or error) decides what happens when the client
+    // reads slower than reviews arrive. Refer ReviewStreamRegistry
+    public Mono<ServerResponse> getMovieReviewSubscribeStream(ServerRequest request) {
+
+        var movieInfoId = request.pathVariable("movieInfoId");
+        var reviews = request.queryParam("overflow")
+                .map(overflow -> reviewStreamRegistry.subscribe(movieInfoId, ReviewStreamRegistry.OverflowPolicy.of(overflow)))
+                .orElseGet(() -> reviewStreamRegistry.subscribe(movieInfoId));
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(reviews, Review.class);
+    }
+}
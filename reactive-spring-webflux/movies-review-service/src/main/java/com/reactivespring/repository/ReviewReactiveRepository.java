@@ -1,9 +1,11 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.Review;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 
+import java.util.Collection;
 import java.util.function.LongFunction;
 
 // We will be using the type Review and String( as id is defined a String in Review.java) as parms
@@ -12,6 +14,9 @@ public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review
     // custom query
     Flux<Review> findReviewsByMovieInfoId(String movieInfoId);
 
+    // custom query : single $in query for many movies. Sort by movieInfoId to get the reviews of a movie next to each other
+    Flux<Review> findReviewsByMovieInfoIdIn(Collection<String> movieInfoIds, Sort sort);
+
 
 
 
@@ -35,11 +35,17 @@ public class ReviewRouter {
                                  .POST("",reviewHandler::addReview)   // create
                                  .GET("",reviewHandler::getReview)    // get
                                 . GET("/qp",reviewHandler::getReviewbyMovieId_QueryParm)   // get by Query Parm
+                                 .GET("/movie/{movieInfoId}",reviewHandler::getReviewsPage)   // reviews of a movie, one page at a time
+                                 .GET("/batch",reviewHandler::getReviewsByMovieIds)   // get reviews of many movies by Query Parm
+                                 .POST("/batch",reviewHandler::getReviewsByMovieIdsBody)   // get reviews of many movies by request body
+                                 .GET("/stats/{movieInfoId}",reviewHandler::getReviewStats)   // rating aggregates of a movie
+                                 .GET("/top",reviewHandler::getTopRatedMovies)   // best rated movies
                                  .PUT("/{id}",reviewHandler::updateReview) // update
                                  .PUT("/option2/{id}",reviewHandler::updateReview_Option2) // update via Option 2
                                  .DELETE("{id}",reviewHandler::deleteReview) //delete
                                  .POST("/publish",reviewHandler::addReviewPublishStream)    // Create and Publish stream
-                                 .GET("/stream",reviewHandler::getReviewSubscribeStream);   //  Subscribe to Stream
+                                 .GET("/stream",reviewHandler::getReviewSubscribeStream)   //  Subscribe to Stream
+                                 .GET("/stream/{movieInfoId}",reviewHandler::getMovieReviewSubscribeStream);   //  Subscribe to the reviews of one movie
 
                     })
                     .GET(request -> ServerResponse.ok().bodyValue("helloworld"))  // first parm is the routes as a string and the second parm is the handler function
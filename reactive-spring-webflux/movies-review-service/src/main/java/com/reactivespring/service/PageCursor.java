@@ -0,0 +1,47 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+// Key of the last review of a page, handed to the client as an opaque ( base64) cursor. Refer ReviewPageService
+// "r|<rating>|<id>" for pages ordered by rating, "c|<createdAt epoch millis>|<id>" for pages ordered by recency. The value is empty when the review has none
+@Getter
+@AllArgsConstructor
+class PageCursor {
+
+    private final Object value;   // Double rating or Instant createdAt, null for a review without one
+    private final String reviewId;
+
+    static String encode(Review last, boolean byRating) {
+        String value;
+        if (byRating) {
+            value = last.getRating() != null ? String.valueOf(last.getRating()) : "";
+        } else {
+            value = last.getCreatedAt() != null ? String.valueOf(last.getCreatedAt().toEpochMilli()) : "";
+        }
+        var key = (byRating ? "r|" : "c|") + value + "|" + last.getReviewId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String cursor, boolean byRating) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+            if (parts.length == 3 && parts[0].equals(byRating ? "r" : "c")) {
+                Object value = null;
+                if (!parts[1].isEmpty()) {
+                    value = byRating ? Double.valueOf(parts[1]) : Instant.ofEpochMilli(Long.parseLong(parts[1]));
+                }
+                return new PageCursor(value, parts[2]);
+            }
+        } catch (IllegalArgumentException ex) {   // also NumberFormatException
+            // reported below
+        }
+        throw new ReviewDataException("after : invalid cursor for this sort order : " + cursor);
+    }
+}
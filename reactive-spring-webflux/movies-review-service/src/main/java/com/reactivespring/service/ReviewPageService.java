@@ -0,0 +1,85 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewPage;
+import com.reactivespring.exception.ReviewDataException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+// Reviews of one movie, one page at a time
+// 1. sortBy "rating" orders by ( rating, _id), "recent" by ( createdAt, _id), both highest / newest first.
+//    Each order has its ( movieInfoId, key, _id) index ( refer Review), so a page is one index range scan without an in-memory sort
+// 2. Keyset ( cursor) pagination : the next page starts after the key of the last review of this page, page 1000 costs the same as page 1
+// 3. Reviews without a rating ( or stored before createdAt existed) come last, Mongo orders a missing value below any other
+// 4. limitRate() : the Mongo cursor hands out at most streamPrefetch reviews at a time, however large the page
+@Service
+public class ReviewPageService {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${reviews.page.maxLimit:500}")   // max page size
+    private int pageMaxLimit;
+
+    @Value("${reviews.stream.prefetch:256}")
+    private int streamPrefetch;
+
+    public ReviewPageService(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    public Mono<ReviewPage> getReviewsPage(String movieInfoId, String sortBy, int limit, String after) {
+
+        if (!"rating".equals(sortBy) && !"recent".equals(sortBy)) {
+            return Mono.error(new ReviewDataException("sort : must be rating or recent"));
+        }
+
+        var byRating = "rating".equals(sortBy);
+        var key = byRating ? "rating" : "createdAt";
+        var pageSize = Math.min(Math.max(limit, 1), pageMaxLimit);
+
+        PageCursor cursor;
+        try {
+            cursor = after != null ? PageCursor.decode(after, byRating) : null;
+        } catch (ReviewDataException ex) {
+            return Mono.error(ex);
+        }
+
+        var criteria = Criteria.where("movieInfoId").is(movieInfoId);
+        if (cursor != null) {
+            criteria.andOperator(afterCursor(key, cursor));
+        }
+
+        var query = Query.query(criteria)
+                .with(Sort.by(Sort.Order.desc(key), Sort.Order.desc("reviewId")))
+                .limit(pageSize + 1);   // one more than asked for : tells whether there is a next page
+
+        return reactiveMongoTemplate.find(query, Review.class)
+                .limitRate(streamPrefetch)
+                .collectList()
+                .map(page -> {
+                    if (page.size() <= pageSize) {
+                        return new ReviewPage(page, null);   // last page
+                    }
+                    var items = page.subList(0, pageSize);
+                    return new ReviewPage(items, PageCursor.encode(items.get(pageSize - 1), byRating));
+                });
+    }
+
+    // Everything which comes after the cursor in descending ( key, _id) order
+    private static Criteria afterCursor(String key, PageCursor cursor) {
+
+        if (cursor.getValue() == null) {
+            // already among the reviews without a key, only _id is left to order by
+            return Criteria.where(key).is(null).and("reviewId").lt(cursor.getReviewId());
+        }
+        return new Criteria().orOperator(
+                Criteria.where(key).lt(cursor.getValue()),
+                Criteria.where(key).is(cursor.getValue()).and("reviewId").lt(cursor.getReviewId()),
+                Criteria.where(key).is(null));   // $lt does not match missing values, they come after every other one
+    }
+}
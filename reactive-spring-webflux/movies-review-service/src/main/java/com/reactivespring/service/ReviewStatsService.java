@@ -0,0 +1,287 @@
+package com.reactivespring.service;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+// Keeps the ReviewStats of a movie current as its reviews are added, updated and deleted
+// 1. Every change is one atomic findAndModify on the stats document : $inc of count, sum and the histogram bucket, $min / $max of the bounds.
+//    Concurrent writes of reviews of the same movie therefore never lose an update, and no read-modify-write of the document is needed
+// 2. $min / $max cannot undo a bound. When the removed rating was the min or the max, the bounds are read again from the
+//    ( movieInfoId, rating) index of the reviews : two single entry index lookups
+// 3. Reviews without a rating are not counted
+// 4. Every new state of the stats is passed on to TopRatedMovies
+// Stats are updated after the review is written. A failed stats update is logged and does not fail the review write
+// Reviews stored before the stats existed ( or whose stats update failed) are counted by backfill(), a one-off task ( refer ReviewStatsInitializer)
+@Service
+@Slf4j
+public class ReviewStatsService {
+
+    private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    static final String MIGRATIONS = "migrations";   // markers of the one-off backfills, refer backfillOnce()
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final TopRatedMovies topRatedMovies;
+
+    public ReviewStatsService(ReactiveMongoTemplate reactiveMongoTemplate, TopRatedMovies topRatedMovies) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.topRatedMovies = topRatedMovies;
+    }
+
+    public Mono<ReviewStats> getStats(String movieInfoId) {
+        return reactiveMongoTemplate.findById(movieInfoId, ReviewStats.class)
+                .defaultIfEmpty(ReviewStats.empty(movieInfoId));   // a movie without reviews has empty stats
+    }
+
+    public Mono<ReviewStats> add(Review review) {
+
+        if (review.getRating() == null) {
+            return Mono.empty();
+        }
+
+        return add(review.getMovieInfoId(), List.of(review));
+    }
+
+    // Reviews inserted together ( refer ReviewWriteBatcher) : one findAndModify per movie instead of one per review
+    public Flux<ReviewStats> addAll(List<Review> reviews) {
+
+        var reviewsByMovie = reviews.stream()
+                .filter(review -> review.getRating() != null)
+                .collect(Collectors.groupingBy(Review::getMovieInfoId));
+
+        return Flux.fromIterable(reviewsByMovie.entrySet())
+                .flatMap(movie -> add(movie.getKey(), movie.getValue()));
+    }
+
+    // reviews : rated reviews of the movie
+    private Mono<ReviewStats> add(String movieInfoId, List<Review> reviews) {
+
+        var ratings = reviews.stream().mapToDouble(Review::getRating).summaryStatistics();
+        var update = new Update()
+                .inc("count", reviews.size())
+                .inc("sum", ratings.getSum())
+                .min("min", ratings.getMin())
+                .max("max", ratings.getMax());
+        reviews.stream()
+                .collect(Collectors.groupingBy(review -> bucket(review.getRating()), Collectors.counting()))
+                .forEach(update::inc);   // one $inc per bucket, the same field cannot be set twice in one update
+
+        // upsert : the first review of a movie creates its stats document
+        return reactiveMongoTemplate.findAndModify(byMovie(movieInfoId), update, FindAndModifyOptions.options().upsert(true).returnNew(true), ReviewStats.class)
+                // two concurrent upserts of a new movie can both try to insert the document, the loser retries and updates it instead
+                .retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance))
+                .doOnNext(topRatedMovies::update)
+                .transform(stats -> logged(stats, "add", reviews.get(0)));
+    }
+
+    public Mono<ReviewStats> remove(Review review) {
+
+        if (review.getRating() == null) {
+            return Mono.empty();
+        }
+
+        var rating = review.getRating();
+        var update = new Update()
+                .inc("count", -1)
+                .inc("sum", -rating)
+                .inc(bucket(rating), -1);
+
+        return reactiveMongoTemplate.findAndModify(byMovie(review.getMovieInfoId()), update, RETURN_NEW, ReviewStats.class)
+                .flatMap(stats -> {
+                    if (stats.getCount() <= 0) {
+                        // last review is gone. count <= 0 in the filter : a review added in the meantime keeps the document
+                        return reactiveMongoTemplate.remove(byMovie(review.getMovieInfoId()).addCriteria(Criteria.where("count").lte(0)), ReviewStats.class)
+                                .thenReturn(ReviewStats.empty(review.getMovieInfoId()));
+                    }
+                    return isBound(stats, rating) ? refreshBounds(review.getMovieInfoId()) : Mono.just(stats);
+                })
+                .doOnNext(topRatedMovies::update)
+                .transform(stats -> logged(stats, "remove", review));
+    }
+
+    // Called after the review has been saved with its new values
+    public Mono<ReviewStats> replace(Review previousReview, Review review) {
+
+        if (previousReview.getRating() == null || review.getRating() == null
+                || !Objects.equals(previousReview.getMovieInfoId(), review.getMovieInfoId())) {
+            return remove(previousReview).then(add(review));   // moved to another movie ( or (un)rated) : take it out of one and add it to the other
+        }
+
+        var previousRating = previousReview.getRating();
+        var rating = review.getRating();
+        if (previousRating.equals(rating)) {
+            return Mono.empty();   // only the comment changed
+        }
+
+        // same movie : count is unchanged, sum moves by the difference
+        var update = new Update()
+                .inc("sum", rating - previousRating)
+                .min("min", rating)
+                .max("max", rating);
+        if (!bucket(previousRating).equals(bucket(rating))) {
+            update.inc(bucket(previousRating), -1)
+                    .inc(bucket(rating), 1);
+        }
+
+        return reactiveMongoTemplate.findAndModify(byMovie(review.getMovieInfoId()), update, RETURN_NEW, ReviewStats.class)
+                .flatMap(stats -> isBound(stats, previousRating) ? refreshBounds(review.getMovieInfoId()) : Mono.just(stats))
+                .doOnNext(topRatedMovies::update)
+                .transform(stats -> logged(stats, "replace", review));
+    }
+
+    // Recomputes the stats of every movie from its reviews and replaces the stored ones
+    // 1. $group by ( movieInfoId, bucket) and then by movieInfoId : count, sum, min, max and the histogram, computed on the server
+    // 2. $merge writes the result into the stats collection on the server ( Mongo 4.2+), the reviews never leave Mongo.
+    //    Older servers do not have $merge, there the grouped stats ( one document per movie) are streamed back and replaced in batches of BACKFILL_BATCH_SIZE
+    // Stats of a movie whose reviews are all gone are left as they are : remove() already deletes them with the last review
+    public Mono<Void> backfill() {
+
+        var statsCollection = reactiveMongoTemplate.getCollectionName(ReviewStats.class);
+
+        return Mono.zip(reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class)),
+                        reactiveMongoTemplate.getCollection(statsCollection),
+                        supportsMerge())
+                .flatMap(collections -> {
+                    var reviews = collections.getT1();
+                    if (collections.getT3()) {
+                        var pipeline = new ArrayList<>(statsPipeline());
+                        pipeline.add(new Document("$merge", new Document("into", statsCollection)
+                                .append("on", "_id")
+                                .append("whenMatched", "replace")
+                                .append("whenNotMatched", "insert")));
+                        return Mono.from(reviews.aggregate(pipeline).allowDiskUse(true).toCollection());
+                    }
+                    var stats = collections.getT2();
+                    return Flux.from(reviews.aggregate(statsPipeline()).allowDiskUse(true))
+                            .map(movieStats -> new ReplaceOneModel<>(Filters.eq("_id", movieStats.get("_id")), movieStats, new ReplaceOptions().upsert(true)))
+                            .buffer(BACKFILL_BATCH_SIZE)
+                            .concatMap(batch -> Mono.from(stats.bulkWrite(batch, new BulkWriteOptions().ordered(false))))
+                            .then();
+                })
+                .doOnSuccess(done -> log.info("Review stats backfilled from the reviews"));
+    }
+
+    // Runs backfill() once per generation across all instances, followed by a rebuild of TopRatedMovies. Emits true if this call ran it
+    // 1. The instance which inserts the marker document ( _id "reviewStatsBackfill-<generation>") runs the backfill, every other one
+    //    gets a DuplicateKeyException and leaves it alone. A restart does not replace the stats again
+    // 2. A failed backfill removes its marker so that the next start tries again. The marker of a backfill that was killed half way
+    //    stays "running" : delete it ( or raise the generation) to run it again
+    // To backfill again later, e.g. after reviews were imported straight into Mongo, raise the generation
+    public Mono<Boolean> backfillOnce(String generation, Duration timeout) {
+
+        var marker = new Document("_id", "reviewStatsBackfill-" + generation)
+                .append("state", "running")
+                .append("startedAt", new Date());
+        var byId = Query.query(Criteria.where("_id").is(marker.get("_id")));
+
+        return reactiveMongoTemplate.insert(marker, MIGRATIONS)
+                .flatMap(claimed -> backfill()
+                        .timeout(timeout)
+                        .then(topRatedMovies.rebuild())
+                        .then(reactiveMongoTemplate.updateFirst(byId, Update.update("state", "done").set("doneAt", new Date()), MIGRATIONS))
+                        .thenReturn(true)
+                        .onErrorResume(ex -> reactiveMongoTemplate.remove(byId, MIGRATIONS)
+                                .then(Mono.error(ex))))
+                .onErrorResume(DuplicateKeyException.class, ex -> {
+                    log.info("Review stats backfill {} already ran or is running elsewhere, skipped", generation);
+                    return Mono.just(false);
+                });
+    }
+
+    private static List<Document> statsPipeline() {
+
+        var bucket = new Document("$substr", List.of(new Document("$floor", "$rating"), 0, -1));   // 8.5 -> "8", same as bucket()
+
+        return List.of(
+                new Document("$match", new Document("rating", new Document("$ne", null))),
+                new Document("$group", new Document("_id", new Document("movieInfoId", "$movieInfoId").append("bucket", bucket))
+                        .append("count", new Document("$sum", 1L))   // long : as count is stored by $inc
+                        .append("sum", new Document("$sum", "$rating"))
+                        .append("min", new Document("$min", "$rating"))
+                        .append("max", new Document("$max", "$rating"))),
+                new Document("$group", new Document("_id", "$_id.movieInfoId")
+                        .append("count", new Document("$sum", "$count"))
+                        .append("sum", new Document("$sum", "$sum"))
+                        .append("min", new Document("$min", "$min"))
+                        .append("max", new Document("$max", "$max"))
+                        .append("histogram", new Document("$push", new Document("k", "$_id.bucket").append("v", "$count")))),
+                new Document("$project", new Document("count", 1)
+                        .append("sum", 1)
+                        .append("min", 1)
+                        .append("max", 1)
+                        .append("histogram", new Document("$arrayToObject", "$histogram"))));
+    }
+
+    private Mono<Boolean> supportsMerge() {
+        return reactiveMongoTemplate.executeCommand(new Document("buildInfo", 1))
+                .map(buildInfo -> {
+                    var version = buildInfo.getList("versionArray", Integer.class);
+                    return version.get(0) > 4 || (version.get(0) == 4 && version.get(1) >= 2);
+                });
+    }
+
+    // Reads the lowest and highest rating of the movie from the ( movieInfoId, rating) index and sets them as the bounds
+    private Mono<ReviewStats> refreshBounds(String movieInfoId) {
+
+        var lowest = reactiveMongoTemplate.findOne(ratedReviews(movieInfoId).with(Sort.by(Sort.Direction.ASC, "rating")), Review.class);
+        var highest = reactiveMongoTemplate.findOne(ratedReviews(movieInfoId).with(Sort.by(Sort.Direction.DESC, "rating")), Review.class);
+
+        return Mono.zip(lowest, highest)
+                .flatMap(bounds -> reactiveMongoTemplate.findAndModify(byMovie(movieInfoId),
+                        new Update()
+                                .set("min", bounds.getT1().getRating())
+                                .set("max", bounds.getT2().getRating()),
+                        RETURN_NEW, ReviewStats.class));
+    }
+
+    private static boolean isBound(ReviewStats stats, double rating) {
+        return (stats.getMin() != null && rating <= stats.getMin())
+                || (stats.getMax() != null && rating >= stats.getMax());
+    }
+
+    private static Query ratedReviews(String movieInfoId) {
+        return Query.query(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null));
+    }
+
+    private static Query byMovie(String movieInfoId) {
+        return Query.query(Criteria.where("_id").is(movieInfoId));
+    }
+
+    private static String bucket(double rating) {
+        return "histogram." + (long) Math.floor(rating);
+    }
+
+    private static Mono<ReviewStats> logged(Mono<ReviewStats> stats, String operation, Review review) {
+        return stats.onErrorResume(ex -> {
+            log.error("Stats {} failed for review {} of movie {} : {}", operation, review.getReviewId(), review.getMovieInfoId(), ex.getMessage());
+            return Mono.empty();
+        });
+    }
+}
@@ -0,0 +1,144 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Write behind for new reviews ( enabled by reviews.writeBehind.enabled, refer ReviewHandler.addReview)
+// 1. Reviews are queued and written maxBatchSize at a time with one unordered insertMany, or after maxDelayMillis when traffic is low :
+//    one round trip and one write to the collection per batch instead of per review
+// 2. The stats of the batch are updated with one findAndModify per movie ( refer ReviewStatsService.addAll)
+// 3. The caller completes once its batch is acknowledged by Mongo : a created review is a stored review, as with save().
+//    A review which fails ( e.g. duplicate id) fails only its own caller
+// 4. At most maxPending reviews wait for a write, beyond that a review is rejected with 503 right away instead of queueing up memory
+// A caller which cancels ( e.g. timeout) does not take its review out of the batch, it is written anyway
+@Component
+@ConditionalOnProperty(name = "reviews.writeBehind.enabled", havingValue = "true")
+@Slf4j
+public class ReviewWriteBatcher {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ReviewStatsService reviewStatsService;
+
+    private final int maxPending;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Sinks.Many<PendingWrite> queue = Sinks.many().unicast().onBackpressureBuffer();
+
+    public ReviewWriteBatcher(ReactiveMongoTemplate reactiveMongoTemplate,
+                              ReviewStatsService reviewStatsService,
+                              @Value("${reviews.writeBehind.maxBatchSize:500}") int maxBatchSize,
+                              @Value("${reviews.writeBehind.maxDelayMillis:5}") long maxDelayMillis,
+                              @Value("${reviews.writeBehind.concurrency:4}") int concurrency,
+                              @Value("${reviews.writeBehind.maxPending:10000}") int maxPending) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewStatsService = reviewStatsService;
+        this.maxPending = maxPending;
+
+        queue.asFlux()
+                .bufferTimeout(maxBatchSize, Duration.ofMillis(maxDelayMillis))
+                // bufferTimeout() cannot wait for its downstream when the timer fires, so batches wait here. Their number is bounded by maxPending
+                .onBackpressureBuffer()
+                .flatMap(this::write, concurrency)   // up to 'concurrency' batches in flight
+                .subscribe();
+    }
+
+    public Mono<Review> write(Review review) {
+        return Mono.create(caller -> {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                caller.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many reviews waiting to be written"));
+                return;
+            }
+            // many request threads emit at the same time, the sink only takes one at a time : retry until it is our turn
+            queue.emitNext(new PendingWrite(review, caller), (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        queue.tryEmitComplete();   // the reviews already queued are still written
+    }
+
+    private Mono<Void> write(List<PendingWrite> batch) {
+
+        var documents = new ArrayList<Document>();
+        for (var pendingWrite : batch) {
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(pendingWrite.review, document);   // same mapping as save()
+            documents.add(document);
+        }
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, BulkWriteError>of())
+                // unordered : everything but the failed documents was inserted
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                .flatMap(writeErrors -> {
+                    var written = new ArrayList<PendingWrite>();
+                    for (var i = 0; i < batch.size(); i++) {
+                        var writeError = writeErrors.get(i);
+                        if (writeError != null) {
+                            complete(batch.get(i), null, writeError.getCode() == DUPLICATE_KEY
+                                    ? new ReviewDataException("reviewId : a review with this id already exists")
+                                    : new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, writeError.getMessage()));
+                        } else {
+                            // insertMany() put the generated _id into the document
+                            written.add(new PendingWrite(reactiveMongoTemplate.getConverter().read(Review.class, documents.get(i)), batch.get(i).caller));
+                        }
+                    }
+                    var writtenReviews = written.stream().map(pendingWrite -> pendingWrite.review).collect(Collectors.toList());
+                    return reviewStatsService.addAll(writtenReviews)
+                            .then(Mono.fromRunnable(() -> written.forEach(pendingWrite -> complete(pendingWrite, pendingWrite.review, null))));
+                })
+                .onErrorResume(ex -> {   // the whole batch failed ( e.g. Mongo not reachable)
+                    log.error("Review batch of {} failed : {}", batch.size(), ex.getMessage());
+                    batch.forEach(pendingWrite -> complete(pendingWrite, null, ex));
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void complete(PendingWrite pendingWrite, Review review, Throwable error) {
+        pending.decrementAndGet();
+        if (error != null) {
+            pendingWrite.caller.error(error);
+        } else {
+            pendingWrite.caller.success(review);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingWrite {
+        private final Review review;
+        private final MonoSink<Review> caller;
+    }
+}
@@ -0,0 +1,200 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.domain.TopRatedMovie;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+// Movies with the highest average rating ( /v1/reviews/top), held in memory so a read is a walk over the first k entries without a Mongo round trip
+// ( a read with a minCount above the tracked one goes to Mongo, refer top())
+// 1. Only the best 'capacity' movies with at least 'minCount' reviews are tracked, ordered by average rating, then by number of reviews
+// 2. ReviewStatsService passes the new stats of a movie after every review write, which moves the movie up, down, into or out of the set
+// 3. The set is (re)built from a $sort + $limit aggregation over the ReviewStats documents at startup and every rebuildIntervalSeconds.
+//    A one-off backfill of the stats from the reviews rebuilds the set when it is done ( refer ReviewStatsService.backfillOnce)
+//    ( writes handled by other instances of the service only show up with the next rebuild)
+// Once movies had to be evicted, the movies which are not tracked are unknown. Every one of them ranks below every tracked movie, so a
+// movie whose rating drops to the last place is let go as well, and a rebuild is started when fewer than maxK movies are left
+@Component
+@Slf4j
+public class TopRatedMovies {
+
+    static final Comparator<TopRatedMovie> RANKING = Comparator.comparingDouble(TopRatedMovie::getAverageRating).reversed()
+            .thenComparing(Comparator.comparingLong(TopRatedMovie::getReviewCount).reversed())
+            .thenComparing(TopRatedMovie::getMovieInfoId);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final int maxK;
+    private final int capacity;
+    private final long minCount;
+    private final Duration rebuildInterval;
+
+    // Read without locking, replaced as a whole by a rebuild. Changes are made under the lock of this object
+    private volatile ConcurrentSkipListSet<TopRatedMovie> ranked = new ConcurrentSkipListSet<>(RANKING);
+    private Map<String, TopRatedMovie> byMovie = new HashMap<>();
+    private boolean truncated;   // movies which qualify have been evicted
+    private Map<String, ReviewStats> updatesDuringRebuild;   // not null while a rebuild runs, replayed onto its result
+
+    private Disposable rebuilds;
+
+    public TopRatedMovies(ReactiveMongoTemplate reactiveMongoTemplate,
+                          @Value("${reviews.top.maxK:100}") int maxK,
+                          @Value("${reviews.top.capacity:1000}") int capacity,
+                          @Value("${reviews.top.minCount:1}") long minCount,
+                          @Value("${reviews.top.rebuildIntervalSeconds:300}") long rebuildIntervalSeconds) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.maxK = maxK;
+        this.capacity = Math.max(capacity, maxK);
+        this.minCount = Math.max(minCount, 1);
+        this.rebuildInterval = Duration.ofSeconds(rebuildIntervalSeconds);
+    }
+
+    // The best k movies with at least minCount reviews. k is capped at maxK, minCount below the tracked minimum is raised to it
+    // Only the best 'capacity' movies with the tracked minCount are held : a movie with more reviews may have been pushed out of them by
+    // movies with fewer reviews and a higher average. A higher minCount is therefore answered by a $match + $sort + $limit over the ReviewStats
+    public Mono<List<TopRatedMovie>> top(int k, long minCount) {
+        var limit = Math.min(k, maxK);
+        if (minCount <= this.minCount) {
+            return Mono.just(tracked(limit));
+        }
+        return ranking(minCount, limit).collectList();
+    }
+
+    // The first k tracked movies, a walk over k entries
+    List<TopRatedMovie> tracked(int k) {
+        var top = new ArrayList<TopRatedMovie>(k);
+        for (var iterator = ranked.iterator(); top.size() < k && iterator.hasNext(); ) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    public synchronized void update(ReviewStats stats) {
+
+        if (updatesDuringRebuild != null) {
+            updatesDuringRebuild.put(stats.getMovieInfoId(), stats);
+        }
+
+        var previous = byMovie.remove(stats.getMovieInfoId());
+        if (previous != null) {
+            ranked.remove(previous);
+        }
+
+        if (stats.getCount() >= minCount) {
+            var movie = new TopRatedMovie(stats.getMovieInfoId(), stats.getSum() / stats.getCount(), stats.getCount());
+            ranked.add(movie);
+            byMovie.put(movie.getMovieInfoId(), movie);
+
+            // in last place, an untracked movie may rank higher. Unless it was tracked before and only moved up
+            var provenAboveUntracked = previous != null && RANKING.compare(movie, previous) <= 0;
+            if (truncated && ranked.last() == movie && !provenAboveUntracked) {
+                ranked.remove(movie);
+                byMovie.remove(movie.getMovieInfoId());
+            }
+        }
+
+        while (ranked.size() > capacity) {
+            byMovie.remove(ranked.pollLast().getMovieInfoId());
+            truncated = true;
+        }
+
+        if (truncated && ranked.size() < maxK && updatesDuringRebuild == null) {
+            rebuild().subscribe();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        var ticks = rebuildInterval.isZero() ? Flux.just(0L) : Flux.interval(Duration.ZERO, rebuildInterval);
+        rebuilds = ticks
+                .concatMap(tick -> rebuild())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilds != null) {
+            rebuilds.dispose();
+        }
+    }
+
+    // Streams the best 'capacity' movies out of Mongo. $sort followed by $limit only keeps 'capacity' documents in memory on the server
+    Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+
+            var rebuiltFlux = ranking(minCount, capacity);
+
+            var updates = new HashMap<String, ReviewStats>();
+            synchronized (this) {
+                if (updatesDuringRebuild != null) {
+                    return Mono.empty();   // one at a time
+                }
+                updatesDuringRebuild = updates;
+            }
+
+            return rebuiltFlux
+                    .collect(() -> new ConcurrentSkipListSet<TopRatedMovie>(RANKING), ConcurrentSkipListSet::add)
+                    .doOnNext(rebuilt -> replaceWith(rebuilt, updates))
+                    .doOnError(ex -> log.error("Top rated movies rebuild failed : {}", ex.getMessage()))
+                    .doFinally(signal -> endRebuild(updates))
+                    .onErrorResume(ex -> Mono.empty())   // keep the current set, the next rebuild tries again
+                    .then();
+        });
+    }
+
+    // The best 'limit' movies with at least minCount reviews, in RANKING order
+    private Flux<TopRatedMovie> ranking(long minCount, int limit) {
+
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("count").gte(minCount)),
+                Aggregation.project("count")
+                        .and(ArithmeticOperators.Divide.valueOf("sum").divideBy("count")).as("averageRating"),
+                Aggregation.sort(Sort.by(Sort.Order.desc("averageRating"), Sort.Order.desc("count"), Sort.Order.asc("_id"))),
+                Aggregation.limit(limit));
+
+        return reactiveMongoTemplate.aggregate(aggregation, reactiveMongoTemplate.getCollectionName(ReviewStats.class), Document.class)
+                .map(document -> new TopRatedMovie(document.get("_id").toString(),
+                        ((Number) document.get("averageRating")).doubleValue(),
+                        ((Number) document.get("count")).longValue()));
+    }
+
+    private synchronized void replaceWith(ConcurrentSkipListSet<TopRatedMovie> rebuilt, Map<String, ReviewStats> updates) {
+
+        endRebuild(updates);
+
+        byMovie = rebuilt.stream().collect(Collectors.toMap(TopRatedMovie::getMovieInfoId, movie -> movie));
+        truncated = rebuilt.size() >= capacity;
+        ranked = rebuilt;
+
+        // writes which arrived while the aggregation ran may not be part of its result
+        updates.values().forEach(this::update);
+        log.info("Top rated movies rebuilt : {} movies tracked", ranked.size());
+    }
+
+    private synchronized void endRebuild(Map<String, ReviewStats> updates) {
+        if (updatesDuringRebuild == updates) {
+            updatesDuringRebuild = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Live reviews of one movie ( /v1/reviews/stream/{movieInfoId})
+// 1. Subscribers are registered under their movieInfoId. A new review is handed only to the subscribers of its movie, nothing is replayed or kept
+// 2. Every subscriber has its own buffer of subscriberBufferSize reviews. When it is full the overflow policy of the subscriber applies :
+//    DROP -> the new review is dropped, LATEST -> the oldest review is dropped, ERROR -> the subscriber is disconnected
+// 3. A slow subscriber only fills its own buffer, publishing never waits for it and the other subscribers are not affected
+@Component
+@Slf4j
+public class ReviewStreamRegistry {
+
+    public enum OverflowPolicy {
+
+        DROP(BufferOverflowStrategy.DROP_LATEST),
+        LATEST(BufferOverflowStrategy.DROP_OLDEST),
+        ERROR(BufferOverflowStrategy.ERROR);
+
+        private final BufferOverflowStrategy strategy;
+
+        OverflowPolicy(BufferOverflowStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public static OverflowPolicy of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                throw new ReviewDataException("overflow : must be drop, latest or error");
+            }
+        }
+    }
+
+    private final Map<String, Set<FluxSink<Review>>> subscribersByMovie = new ConcurrentHashMap<>();
+
+    private final int subscriberBufferSize;
+
+    private final OverflowPolicy defaultOverflow;
+
+    public ReviewStreamRegistry(@Value("${reviews.stream.subscriberBufferSize:256}") int subscriberBufferSize,
+                                @Value("${reviews.stream.overflow:latest}") String defaultOverflow) {
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.defaultOverflow = OverflowPolicy.of(defaultOverflow);
+    }
+
+    public Flux<Review> subscribe(String movieInfoId) {
+        return subscribe(movieInfoId, defaultOverflow);
+    }
+
+    public Flux<Review> subscribe(String movieInfoId, OverflowPolicy overflow) {
+        return Flux.<Review>create(sink -> {
+                    // compute() : adding to the set and removing the empty set ( below) cannot interleave
+                    subscribersByMovie.compute(movieInfoId, (key, subscribers) -> {
+                        var movieSubscribers = subscribers != null ? subscribers : ConcurrentHashMap.<FluxSink<Review>>newKeySet();
+                        movieSubscribers.add(sink);
+                        return movieSubscribers;
+                    });
+                    sink.onDispose(() -> subscribersByMovie.computeIfPresent(movieInfoId, (key, subscribers) -> {
+                        subscribers.remove(sink);
+                        return subscribers.isEmpty() ? null : subscribers;   // null removes the movie
+                    }));
+                })
+                .onBackpressureBuffer(subscriberBufferSize,
+                        dropped -> log.debug("Slow subscriber of movie {}, dropped review {}", movieInfoId, dropped.getReviewId()),
+                        overflow.strategy)
+                .doOnError(ex -> log.info("Slow subscriber of movie {} disconnected : {}", movieInfoId, ex.getMessage()));
+    }
+
+    public void publish(Review review) {
+        var subscribers = subscribersByMovie.get(review.getMovieInfoId());
+        if (subscribers != null) {
+            subscribers.forEach(sink -> sink.next(review));   // only buffers, does not wait for the subscriber
+        }
+    }
+
+    int subscriberCount(String movieInfoId) {
+        var subscribers = subscribersByMovie.get(movieInfoId);
+        return subscribers != null ? subscribers.size() : 0;
+    }
+}
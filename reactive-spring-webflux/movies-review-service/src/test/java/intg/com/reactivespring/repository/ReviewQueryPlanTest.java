@@ -0,0 +1,151 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.config.MongoIndexInitializer;
+import com.reactivespring.domain.Review;
+import com.reactivespring.service.ReviewPageService;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Calls every query method of ReviewReactiveRepository, and the pages of ReviewPageService, with the Mongo profiler on
+// ( level 2 : every operation) and fails when the planSummary of a query they sent is not an index scan.
+// The repository query methods are found by reflection : a new query method without a call in queryMethodCalls() fails the test as well
+@DataMongoTest
+@Import({MongoIndexInitializer.class, ReviewPageService.class})   // MongoIndexInitializer creates the declared indexes
+@TestPropertySource(properties = "spring.mongodb.embedded.version=3.5.5")   // need to include this else test case wil fail
+@ActiveProfiles("test")
+class ReviewQueryPlanTest {
+
+    private static final String PROFILE = "system.profile";
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewPageService reviewPageService;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // a query on a collection which does not exist is planned as EOF, not as a scan
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review(null, "1", "Awesome Movie", 9.0, Instant.parse("2021-01-01T00:00:00Z")),
+                        new Review(null, "1", "Awesome Movie1", 8.0, Instant.parse("2021-01-02T00:00:00Z")),
+                        new Review(null, "1", "Unrated", null, null),
+                        new Review(null, "2", "Excellent Movie", 8.0, Instant.parse("2021-01-03T00:00:00Z"))))
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        setProfilingLevel(0);
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    // method name -> a call of it, with the arguments the handlers pass
+    private Map<String, Supplier<Publisher<?>>> queryMethodCalls() {
+        return Map.of(
+                "findReviewsByMovieInfoId", () -> reviewReactiveRepository.findReviewsByMovieInfoId("1"),
+                "findReviewsByMovieInfoIdIn", () -> reviewReactiveRepository.findReviewsByMovieInfoIdIn(List.of("1", "2"), Sort.by("movieInfoId")));
+    }
+
+    @Test
+    void everyQueryMethodUsesAnIndex() {
+
+        var failures = new ArrayList<String>();
+        var calls = queryMethodCalls();
+
+        for (var method : queryMethods()) {
+            var call = calls.get(method.getName());
+            if (call == null) {
+                failures.add(method.getName() + " : no call in queryMethodCalls()");
+                continue;
+            }
+            failures.addAll(withoutIndex(method.getName(), call));
+        }
+
+        assertTrue(failures.isEmpty(), "Queries which do not use an index : " + failures);
+    }
+
+    // first page and the page after a cursor, for both orders
+    @Test
+    void reviewPagesUseAnIndex() {
+
+        var failures = new ArrayList<String>();
+
+        for (var sortBy : List.of("rating", "recent")) {
+            failures.addAll(withoutIndex("page by " + sortBy, () -> reviewPageService.getReviewsPage("1", sortBy, 1, null)
+                    .flatMap(page -> reviewPageService.getReviewsPage("1", sortBy, 1, page.getNextCursor()))
+                    .flatMap(page -> reviewPageService.getReviewsPage("1", sortBy, 1, page.getNextCursor()))));   // the third page holds the review without a key
+        }
+
+        assertTrue(failures.isEmpty(), "Queries which do not use an index : " + failures);
+    }
+
+    // query methods declared by ReviewReactiveRepository itself, the inherited CRUD methods go by _id
+    private static List<Method> queryMethods() {
+        return Arrays.stream(ReviewReactiveRepository.class.getDeclaredMethods())
+                .filter(method -> !method.isDefault() && !method.isSynthetic() && !Modifier.isStatic(method.getModifiers()))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> withoutIndex(String name, Supplier<Publisher<?>> call) {
+
+        var planSummaries = planSummaries(call);
+        if (planSummaries.isEmpty()) {
+            return List.of(name + " : sent no query");
+        }
+        return planSummaries.stream()
+                .filter(planSummary -> planSummary == null || !planSummary.contains("IXSCAN") || planSummary.contains("COLLSCAN"))
+                .map(planSummary -> name + " : " + planSummary)
+                .collect(Collectors.toList());
+    }
+
+    // planSummary of every query the call sent, read back from the profiler
+    private List<String> planSummaries(Supplier<Publisher<?>> call) {
+
+        setProfilingLevel(0);
+        reactiveMongoTemplate.dropCollection(PROFILE).block();   // only the queries of this call are left in it
+        setProfilingLevel(2);
+
+        Flux.from(call.get()).blockLast();
+
+        setProfilingLevel(0);
+
+        var namespace = reactiveMongoTemplate.getMongoDatabase().block().getName() + "." + reactiveMongoTemplate.getCollectionName(Review.class);
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("ns").is(namespace).and("op").is("query")), Document.class, PROFILE)
+                .map(operation -> operation.getString("planSummary"))
+                .collectList()
+                .block();
+    }
+
+    private void setProfilingLevel(int level) {
+        reactiveMongoTemplate.executeCommand(new Document("profile", level)).block();
+    }
+}
@@ -1,22 +1,32 @@
 package com.reactivespring.routes;
 
 
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewPage;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.domain.TopRatedMovie;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewStatsService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)   // will spin up Spring app in a random port
 @ActiveProfiles("test")   // Ensure this is different to all other profiles provided in  application.yml
@@ -30,6 +40,12 @@ public class  ReviewsIntgTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    ReviewStatsService reviewStatsService;
+
     static String REVIEWS_URL = "/v1/reviews";
 
 
@@ -50,6 +66,7 @@ public class  ReviewsIntgTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block(); // delete all data once tests hav ebeen performed
+        reactiveMongoTemplate.remove(ReviewStats.class).all().block();
 
     }
 
@@ -181,4 +198,229 @@ public class  ReviewsIntgTest {
 
     }
 
+
+    @Test
+    void getReviewsByMovieIds() {
+
+        //given
+        var movieInfoIds = "1,2,3";   // movie "3" has no reviews and is left out of the response
+
+        //when
+
+        //then
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(REVIEWS_URL + "/batch")
+                        .queryParam("movieInfoIds", movieInfoIds)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieReviews.class)
+                .value(movieReviewsList -> {
+                    assertEquals(2, movieReviewsList.size());
+                    assertEquals("1", movieReviewsList.get(0).getMovieInfoId());
+                    assertEquals(2, movieReviewsList.get(0).getReviews().size());
+                    assertEquals(1, movieReviewsList.get(1).getReviews().size());
+                });
+
+    }
+
+
+
+    @Test
+    void getReviewStats() {
+
+        //given : the reviews saved in setUp() bypass the handler, so movie "9" starts without stats
+        var lowReview = postReview(new Review(null, "9", "Good Movie", 7.0));
+        postReview(new Review(null, "9", "Awesome Movie", 9.5));
+        var otherReview = postReview(new Review(null, "9", "Fine Movie", 8.0));
+
+        //when : 8.0 -> 9.0 moves the rating to another bucket, the 7.0 review was the min
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL + "/{id}", otherReview.getReviewId())
+                .bodyValue(new Review(null, "9", "Fine Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URL + "/{id}", lowReview.getReviewId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        //then
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats/{movieInfoId}", "9")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(ReviewStats.class)
+                .consumeWith(reviewStatsEntityExchangeResult -> {
+                    var reviewStats = reviewStatsEntityExchangeResult.getResponseBody();
+                    assert reviewStats != null;
+                    assertEquals(2, reviewStats.getCount());
+                    assertEquals(18.5, reviewStats.getSum());
+                    assertEquals(9.0, reviewStats.getMin());   // bounds read again after the min was deleted
+                    assertEquals(9.5, reviewStats.getMax());
+                    assertEquals(Map.of("7", 0L, "8", 0L, "9", 2L), reviewStats.getHistogram());
+                });
+    }
+
+    @Test
+    void backfillReviewStats() {
+
+        //given : the reviews saved in setUp() have no stats
+
+        //when
+        reviewStatsService.backfill().block();
+
+        //then
+        var reviewStats = getReviewStats("1");
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(18.0, reviewStats.getSum());
+        assertEquals(9.0, reviewStats.getMin());
+        assertEquals(9.0, reviewStats.getMax());
+        assertEquals(Map.of("9", 2L), reviewStats.getHistogram());
+
+        // the backfilled stats are kept current by the following writes
+        postReview(new Review(null, "1", "Good Movie", 7.5));
+        reviewStats = getReviewStats("1");
+        assertEquals(3, reviewStats.getCount());
+        assertEquals(7.5, reviewStats.getMin());
+        assertEquals(Map.of("7", 1L, "9", 2L), reviewStats.getHistogram());
+    }
+
+    @Test
+    void addReview_existingReviewId() {
+
+        //given
+        reviewStatsService.backfill().block();
+
+        //when : "abc" is already stored with rating 8.0, save() replaces it
+        postReview(new Review("abc", "2", "Not that Excellent", 6.0));
+
+        //then : the old rating left the stats instead of being counted next to the new one
+        var reviewStats = getReviewStats("2");
+        assertEquals(1, reviewStats.getCount());
+        assertEquals(6.0, reviewStats.getSum());
+        assertEquals(Map.of("6", 1L, "8", 0L), reviewStats.getHistogram());
+    }
+
+    @Test
+    void getTopRatedMovies() {
+
+        //given
+        postReview(new Review(null, "top1", "Best Movie", 10.0));
+        postReview(new Review(null, "top1", "Best Movie Ever", 10.0));
+        postReview(new Review(null, "top2", "Average Movie", 5.0));
+
+        //when
+
+        //then
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(REVIEWS_URL + "/top")
+                        .queryParam("k", 100)
+                        .queryParam("minCount", 2)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(TopRatedMovie.class)
+                .value(topRatedMovies -> {
+                    assertEquals("top1", topRatedMovies.get(0).getMovieInfoId());
+                    assertEquals(10.0, topRatedMovies.get(0).getAverageRating());
+                    assertEquals(2, topRatedMovies.get(0).getReviewCount());
+                    assert topRatedMovies.stream().noneMatch(movie -> movie.getMovieInfoId().equals("top2"));   // a single review
+                });
+    }
+
+    @Test
+    void getReviewsPage() {
+
+        //given
+        postReview(new Review(null, "p", "Good Movie", 7.0));
+        postReview(new Review(null, "p", "Awesome Movie", 9.0));
+        postReview(new Review(null, "p", "Fine Movie", 8.0));
+
+        //when
+        var firstPage = getReviewsPage("p", "rating", null);
+
+        //then
+        assertEquals(List.of(9.0, 8.0), ratings(firstPage));
+        assert firstPage.getNextCursor() != null;
+
+        var lastPage = getReviewsPage("p", "rating", firstPage.getNextCursor());
+        assertEquals(List.of(7.0), ratings(lastPage));
+        assertNull(lastPage.getNextCursor());
+
+        var newestFirst = getReviewsPage("p", "recent", null);
+        assertEquals(2, newestFirst.getItems().size());
+        assert !newestFirst.getItems().get(0).getCreatedAt().isBefore(newestFirst.getItems().get(1).getCreatedAt());
+    }
+
+    @Test
+    void getReviewsPage_invalidCursor() {
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/movie/{movieInfoId}?sort=rating&after={after}", "p", "bm90LWEtY3Vyc29y")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    private ReviewPage getReviewsPage(String movieInfoId, String sort, String after) {
+        return webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(REVIEWS_URL + "/movie/{movieInfoId}")
+                        .queryParam("sort", sort)
+                        .queryParam("limit", 2)
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .build(movieInfoId))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(ReviewPage.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static List<Double> ratings(ReviewPage page) {
+        return page.getItems().stream().map(Review::getRating).collect(Collectors.toList());
+    }
+
+    private ReviewStats getReviewStats(String movieInfoId) {
+        return webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats/{movieInfoId}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(ReviewStats.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private Review postReview(Review review) {
+        return webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
 }
@@ -0,0 +1,84 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.exception.ReviewDataException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataMongoTest
+@Import({ReviewWriteBatcher.class, ReviewStatsService.class, TopRatedMovies.class})
+@TestPropertySource(properties = {
+        "spring.mongodb.embedded.version=3.5.5",   // need to include this else test case wil fail
+        "reviews.writeBehind.enabled=true",
+        "reviews.writeBehind.maxBatchSize=10",
+        "reviews.writeBehind.maxDelayMillis=50"})
+@ActiveProfiles("test")
+class ReviewWriteBatcherIntgTest {
+
+    @Autowired
+    ReviewWriteBatcher reviewWriteBatcher;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @AfterEach
+    void tearDown() {
+        reactiveMongoTemplate.remove(Review.class).all().block();
+        reactiveMongoTemplate.remove(ReviewStats.class).all().block();
+    }
+
+    @Test
+    void write() {
+
+        //given : 25 concurrent callers -> batches of 10, 10 and 5
+        var reviews = Flux.range(1, 25)
+                .map(i -> new Review(null, "1", "Review " + i, 8.0));
+
+        //when
+        var writtenReviews = reviews
+                .flatMap(reviewWriteBatcher::write)
+                .collectList()
+                .block();
+
+        //then
+        assertEquals(25, writtenReviews.size());
+        assert writtenReviews.stream().allMatch(review -> review.getReviewId() != null);
+        assertEquals(25L, reactiveMongoTemplate.count(new Query(), Review.class).block());
+
+        var reviewStats = reactiveMongoTemplate.findById("1", ReviewStats.class).block();
+        assertEquals(25, reviewStats.getCount());
+        assertEquals(200.0, reviewStats.getSum());
+    }
+
+    @Test
+    void write_duplicateIdFailsOnlyItsCaller() {
+
+        //given
+        reviewWriteBatcher.write(new Review("dup", "1", "First", 7.0)).block();
+
+        //when : both in the same batch
+        var results = Mono.zip(
+                        reviewWriteBatcher.write(new Review("dup", "1", "Second", 9.0))
+                                .map(Review::getComment)
+                                .onErrorReturn(ReviewDataException.class, "rejected"),
+                        reviewWriteBatcher.write(new Review(null, "1", "Other", 9.0))
+                                .map(Review::getComment))
+                .block();
+
+        //then
+        assertEquals("rejected", results.getT1());
+        assertEquals("Other", results.getT2());
+    }
+}
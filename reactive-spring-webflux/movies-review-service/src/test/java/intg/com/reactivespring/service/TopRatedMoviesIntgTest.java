@@ -0,0 +1,111 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.domain.TopRatedMovie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataMongoTest
+@Import({ReviewStatsService.class, TopRatedMovies.class})
+@TestPropertySource(properties = {
+        "spring.mongodb.embedded.version=3.5.5",   // need to include this else test case wil fail
+        "reviews.top.maxK=2",
+        "reviews.top.capacity=2"})   // only the best 2 movies are tracked
+@ActiveProfiles("test")
+class TopRatedMoviesIntgTest {
+
+    @Autowired
+    ReviewStatsService reviewStatsService;
+
+    @Autowired
+    TopRatedMovies topRatedMovies;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @AfterEach
+    void tearDown() {
+        reactiveMongoTemplate.remove(Review.class).all().block();
+        reactiveMongoTemplate.remove(ReviewStats.class).all().block();
+        reactiveMongoTemplate.dropCollection(ReviewStatsService.MIGRATIONS).block();
+    }
+
+    @Test
+    void rebuildIncludesReviewsStoredWithoutStats() {
+
+        //given : reviews written straight to Mongo, as before the stats existed
+        reactiveMongoTemplate.insertAll(List.of(
+                        new Review(null, "a", "Good Movie", 7.0),
+                        new Review(null, "a", "Fine Movie", 8.0),
+                        new Review(null, "b", "Awesome Movie", 9.0),
+                        new Review(null, "b", "Best Movie", 10.0),
+                        new Review(null, "c", "Bad Movie", 2.0)))
+                .blockLast();
+
+        //when : what the startup does, backfill first then the rebuild
+        reviewStatsService.backfill().block();
+        topRatedMovies.rebuild().block();
+
+        //then
+        assertEquals(List.of("b", "a"), ids(topRatedMovies.top(10, 1).block()));
+        assertEquals(9.5, topRatedMovies.top(1, 1).block().get(0).getAverageRating());
+    }
+
+    @Test
+    void higherMinCountFindsMoviesOutsideTheTrackedSet() {
+
+        //given : "many" has the most reviews but the lowest average, the two single review movies take the 2 tracked places
+        reactiveMongoTemplate.insertAll(List.of(
+                        new Review(null, "x", "Best Movie", 10.0),
+                        new Review(null, "y", "Awesome Movie", 9.5),
+                        new Review(null, "many", "Good Movie", 8.0),
+                        new Review(null, "many", "Fine Movie", 8.0),
+                        new Review(null, "many", "Nice Movie", 8.0)))
+                .blockLast();
+        reviewStatsService.backfill().block();
+        topRatedMovies.rebuild().block();
+
+        //then
+        assertEquals(List.of("x", "y"), ids(topRatedMovies.top(2, 1).block()));
+        assertEquals(List.of("many"), ids(topRatedMovies.top(2, 2).block()));   // pushed out of the tracked set, found in the stats
+    }
+
+    @Test
+    void backfillRunsOncePerGeneration() {
+
+        //given
+        reactiveMongoTemplate.insertAll(List.of(
+                        new Review(null, "a", "Good Movie", 7.0),
+                        new Review(null, "b", "Awesome Movie", 9.0)))
+                .blockLast();
+
+        //when : the first run backfills and rebuilds
+        assertEquals(true, reviewStatsService.backfillOnce("1", Duration.ofSeconds(30)).block());
+        assertEquals(List.of("b", "a"), ids(topRatedMovies.top(10, 1).block()));
+
+        //then : a restart with the same generation leaves the stats alone, a new generation runs again
+        reactiveMongoTemplate.remove(ReviewStats.class).all().block();
+        assertEquals(false, reviewStatsService.backfillOnce("1", Duration.ofSeconds(30)).block());
+        assertEquals(0L, reactiveMongoTemplate.count(new Query(), ReviewStats.class).block());
+        assertEquals(true, reviewStatsService.backfillOnce("2", Duration.ofSeconds(30)).block());
+        assertEquals(2L, reactiveMongoTemplate.count(new Query(), ReviewStats.class).block());
+    }
+
+    private static List<String> ids(List<TopRatedMovie> movies) {
+        return movies.stream().map(TopRatedMovie::getMovieInfoId).collect(Collectors.toList());
+    }
+}
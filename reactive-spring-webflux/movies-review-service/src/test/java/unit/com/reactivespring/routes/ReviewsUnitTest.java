@@ -5,6 +5,10 @@ import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exceptionHandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewPageService;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.service.TopRatedMovies;
+import com.reactivespring.stream.ReviewStreamRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -34,6 +38,18 @@ public class ReviewsUnitTest {
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepositoryMock;
 
+    @MockBean
+    private ReviewStatsService reviewStatsServiceMock;
+
+    @MockBean
+    private TopRatedMovies topRatedMoviesMock;
+
+    @MockBean
+    private ReviewPageService reviewPageServiceMock;
+
+    @MockBean
+    private ReviewStreamRegistry reviewStreamRegistryMock;
+
 
     @Autowired
     private WebTestClient webTestClient;
@@ -81,6 +97,7 @@ public class ReviewsUnitTest {
         // Note : here we will not be interacting with the Mongo DB
         when(reviewReactiveRepositoryMock.save(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("xxx", "1", "Awesome Movie", 9.0)));
+        when(reviewStatsServiceMock.add(isA(Review.class))).thenReturn(Mono.empty());
 
 
         // then
@@ -185,6 +202,7 @@ public class ReviewsUnitTest {
         when(reviewReactiveRepositoryMock.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", "1", "Not an Awesome Movie", 8.0)));
         // update the movie
         when(reviewReactiveRepositoryMock.findById((String) any())).thenReturn(Mono.just(new Review("abc", "1", "Awesome Movie", 9.0)));
+        when(reviewStatsServiceMock.replace(isA(Review.class), isA(Review.class))).thenReturn(Mono.empty());
 
         //the
         webTestClient
@@ -214,6 +232,7 @@ public class ReviewsUnitTest {
         //when
         when(reviewReactiveRepositoryMock.findById((String) any())).thenReturn(Mono.just(new Review("abc", "1", "Awesome Movie", 9.0)));
         when(reviewReactiveRepositoryMock.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reviewStatsServiceMock.remove(isA(Review.class))).thenReturn(Mono.empty());
 
         //then
         webTestClient
@@ -0,0 +1,59 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.domain.TopRatedMovie;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TopRatedMoviesTest {
+
+    // at most 2 per read, 3 tracked, no Mongo : nothing in these tests starts a rebuild
+    TopRatedMovies topRatedMovies = new TopRatedMovies(null, 2, 3, 1, 0);
+
+    @Test
+    void rankedByAverageRating() {
+
+        //given
+        topRatedMovies.update(stats("a", 2, 16.0));   // 8.0
+        topRatedMovies.update(stats("b", 1, 9.0));    // 9.0
+        topRatedMovies.update(stats("c", 5, 35.0));   // 7.0
+
+        //then
+        assertEquals(List.of("b", "a"), ids(topRatedMovies.top(10, 1).block()));   // k is capped at 2
+
+        //when : the last review of "b" is deleted
+        topRatedMovies.update(stats("b", 0, 0));
+
+        //then
+        assertEquals(List.of("a", "c"), ids(topRatedMovies.top(2, 1).block()));
+    }
+
+    @Test
+    void movieDroppingToLastPlaceIsReleasedOnceTruncated() {
+
+        //given
+        topRatedMovies.update(stats("a", 1, 9.0));
+        topRatedMovies.update(stats("b", 1, 8.0));
+        topRatedMovies.update(stats("c", 1, 7.0));
+        topRatedMovies.update(stats("d", 1, 6.0));   // over capacity, the last one is evicted
+
+        //when : "b" drops below "c", "d" is not tracked any more and may rank higher
+        topRatedMovies.update(stats("b", 2, 10.0));
+
+        //then
+        assertEquals(List.of("a", "c"), ids(topRatedMovies.top(2, 1).block()));
+    }
+
+    private static ReviewStats stats(String movieInfoId, long count, double sum) {
+        return new ReviewStats(movieInfoId, count, sum, null, null, new HashMap<>());
+    }
+
+    private static List<String> ids(List<TopRatedMovie> movies) {
+        return movies.stream().map(TopRatedMovie::getMovieInfoId).collect(Collectors.toList());
+    }
+}
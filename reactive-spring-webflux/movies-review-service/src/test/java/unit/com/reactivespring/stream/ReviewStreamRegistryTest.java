@@ -0,0 +1,70 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReviewStreamRegistryTest {
+
+    ReviewStreamRegistry reviewStreamRegistry = new ReviewStreamRegistry(2, "latest");
+
+    @Test
+    void reviewsAreRoutedByMovie() {
+
+        StepVerifier.create(reviewStreamRegistry.subscribe("1"))
+                .then(() -> {
+                    reviewStreamRegistry.publish(new Review("a", "1", "Awesome Movie", 9.0));
+                    reviewStreamRegistry.publish(new Review("b", "2", "Other Movie", 8.0));
+                    reviewStreamRegistry.publish(new Review("c", "1", "Awesome Movie1", 9.0));
+                })
+                .expectNextMatches(review -> review.getReviewId().equals("a"))
+                .expectNextMatches(review -> review.getReviewId().equals("c"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(0, reviewStreamRegistry.subscriberCount("1"));   // removed when it left
+    }
+
+    @Test
+    void latestKeepsTheNewestReviews() {
+
+        StepVerifier.create(reviewStreamRegistry.subscribe("1", ReviewStreamRegistry.OverflowPolicy.LATEST), 0)
+                .then(() -> {
+                    reviewStreamRegistry.publish(new Review("a", "1", "Awesome Movie", 9.0));
+                    reviewStreamRegistry.publish(new Review("b", "1", "Awesome Movie1", 9.0));
+                    reviewStreamRegistry.publish(new Review("c", "1", "Awesome Movie2", 9.0));   // buffer of 2 is full, "a" is dropped
+                })
+                .thenRequest(10)
+                .expectNextMatches(review -> review.getReviewId().equals("b"))
+                .expectNextMatches(review -> review.getReviewId().equals("c"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void slowSubscriberIsDisconnectedOnError() throws Exception {
+
+        //given : a subscriber which keeps up
+        var fastSubscriber = reviewStreamRegistry.subscribe("1").take(3).collectList().toFuture();
+
+        //then
+        StepVerifier.create(reviewStreamRegistry.subscribe("1", ReviewStreamRegistry.OverflowPolicy.ERROR), 0)
+                .then(() -> {
+                    reviewStreamRegistry.publish(new Review("a", "1", "Awesome Movie", 9.0));
+                    reviewStreamRegistry.publish(new Review("b", "1", "Awesome Movie1", 9.0));
+                    reviewStreamRegistry.publish(new Review("c", "1", "Awesome Movie2", 9.0));   // overflows the slow subscriber only
+                })
+                .thenRequest(10)
+                .thenConsumeWhile(review -> true)   // what was buffered before the overflow
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(3, fastSubscriber.get(5, TimeUnit.SECONDS).size());
+        assertEquals(0, reviewStreamRegistry.subscriberCount("1"));   // the fast one completed after 3, the slow one was disconnected
+    }
+}
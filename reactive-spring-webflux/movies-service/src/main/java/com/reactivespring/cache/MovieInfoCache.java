@@ -0,0 +1,85 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+// Near-cache for MovieInfo records in front of MoviesInfoRestClient.
+// 1. Size based eviction ( maxSize) and time based expiry ( ttlSeconds)
+// 2. Hit, miss and eviction counters are published as 'cache.*' metrics with the tag cache=movieInfo ( refer /actuator/metrics/cache.gets)
+// 3. Entries are refreshed by MovieInfoCacheRefresher from the movie info stream, so changes show up before the TTL runs out
+@Component
+@Slf4j
+public class MovieInfoCache {
+
+    private final boolean enabled;
+
+    private final Cache<String, MovieInfo> cache;
+
+    @Autowired
+    public MovieInfoCache(@Value("${restClient.moviesInfo.cache.enabled:true}") boolean enabled,
+                          @Value("${restClient.moviesInfo.cache.maxSize:10000}") long maxSize,
+                          @Value("${restClient.moviesInfo.cache.ttlSeconds:600}") long ttlSeconds,
+                          MeterRegistry meterRegistry) {
+        this(enabled, maxSize, ttlSeconds, meterRegistry, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    // ticker : clock of the TTL, executor : runs the evictions. Both are Caffeine's defaults above, tests pass their own
+    MovieInfoCache(boolean enabled, long maxSize, long ttlSeconds, MeterRegistry meterRegistry, Ticker ticker, Executor executor) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "movieInfo");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Return the cached MovieInfo for the id or load it using the passed in loader and cache the result.
+    // Empty results and errors are not cached.
+    public Mono<MovieInfo> get(String movieId, Function<String, Mono<MovieInfo>> loader) {
+
+        if (!enabled) {
+            return loader.apply(movieId);
+        }
+
+        return Mono.justOrEmpty(cache.getIfPresent(movieId))
+                .switchIfEmpty(Mono.defer(() -> loader.apply(movieId)
+                        .doOnNext(movieInfo -> cache.put(movieId, movieInfo))));
+    }
+
+    // Insert or replace an entry. Used by the stream refresher for new and changed movie infos.
+    public void put(MovieInfo movieInfo) {
+
+        if (!enabled || movieInfo.getMovieInfoId() == null) {
+            return;
+        }
+        log.debug("Refreshing cached MovieInfo : {}", movieInfo.getMovieInfoId());
+        cache.put(movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    // Drop an entry. Used by the stream refresher for deleted movie infos.
+    public void invalidate(String movieId) {
+        log.debug("Dropping cached MovieInfo : {}", movieId);
+        cache.invalidate(movieId);
+    }
+}
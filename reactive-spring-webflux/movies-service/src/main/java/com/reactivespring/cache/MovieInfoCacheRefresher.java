@@ -0,0 +1,59 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.stream.MovieInfoStreamHub;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BufferOverflowStrategy;
+
+import javax.annotation.PreDestroy;
+
+// Keeps MovieInfoCache up to date by subscribing to the movie info stream ( /v1/movieinfos/events of movies-info-service, shared through MovieInfoStreamHub).
+// Every new or changed MovieInfo published there replaces the cached entry, and a deleted one is dropped from the cache, without waiting for the TTL to expire.
+@Component
+@Slf4j
+public class MovieInfoCacheRefresher {
+
+    private final MovieInfoStreamHub movieInfoStreamHub;
+
+    private final MovieInfoCache movieInfoCache;
+
+    @Value("${restClient.moviesInfo.cache.streamRefresh:true}")
+    private boolean streamRefresh;
+
+    private Disposable subscription;
+
+    public MovieInfoCacheRefresher(MovieInfoStreamHub movieInfoStreamHub, MovieInfoCache movieInfoCache) {
+        this.movieInfoStreamHub = movieInfoStreamHub;
+        this.movieInfoCache = movieInfoCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)   // subscribe once the application is up
+    public void subscribe() {
+
+        if (!movieInfoCache.isEnabled() || !streamRefresh) {
+            return;
+        }
+
+        // the hub re-connects on its own, so this subscription lasts as long as the application.
+        // DROP_OLDEST : if the cache ever falls behind, older updates are the ones worth losing
+        subscription = Disposables.composite(
+                movieInfoStreamHub.subscribe(BufferOverflowStrategy.DROP_OLDEST)
+                        .doOnNext(movieInfoCache::put)
+                        .subscribe(),
+                movieInfoStreamHub.deletes()
+                        .doOnNext(movieInfoCache::invalidate)   // a deleted movie info must not be served from the cache until the TTL runs out
+                        .subscribe());
+    }
+
+    @PreDestroy
+    public void dispose() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+}
@@ -1,17 +1,35 @@
 package com.reactivespring.client;
 
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.HedgingPolicy;
+import com.reactivespring.util.MicroBatcher;
+import com.reactivespring.util.RetryPolicy;
+import com.reactivespring.util.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
@@ -21,23 +39,102 @@ public class MoviesInfoRestClient {
     @Value("${restClient.moviesInfoUrl}")   // key-value pair is specified in application.yaml
     private String moviesInfoUrl;
 
-    @Value("${restClient.moviesInfoUrlSubscribe}") // key-value pair is specified in application.yaml
-    private String moviesInfoSubscribeUrl;
+    @Value("${restClient.moviesInfo.singleFlight:true}")  // concurrent callers for the same movie id share one call to the movie info service
+    private boolean singleFlightEnabled;
+
+    private final SingleFlight<String, MovieInfo> movieInfoCalls = new SingleFlight<>();
+
+    @Value("${restClient.moviesInfoUrlEvents:http://localhost:8080/v1/movieinfos/events}") // refer movies-info-service.MoviesInfoController.getMovieInfoEvents()
+    private String moviesInfoEventsUrl;
+
+    @Value("${restClient.moviesInfoBatchUrl:http://localhost:8080/v1/movieinfos/batch}") // refer movies-info-service.MoviesInfoController.getMovieInfosByIds()
+    private String moviesInfoBatchUrl;
+
+    @Value("${restClient.moviesInfo.batching.enabled:false}")  // gather single id lookups into batched calls
+    private boolean batchingEnabled;
+
+    @Value("${restClient.moviesInfo.batching.maxBatchSize:50}")
+    private int batchingMaxBatchSize;
+
+    @Value("${restClient.moviesInfo.batching.windowMicros:500}")   // max time a lookup waits for other lookups to join its batch
+    private long batchingWindowMicros;
+
+    @Value("${restClient.moviesInfo.batching.concurrency:16}")   // max number of batched calls in flight
+    private int batchingConcurrency;
+
+    private MicroBatcher<String, MovieInfo> movieInfoBatcher;
+
+    private MovieInfoCache movieInfoCache;
+
+    private RetryPolicy retryPolicy;
+
+    private HedgingPolicy hedgingPolicy;
+
+    @Value("${restClient.moviesInfo.hedging.enabled:false}")   // opt-in : hedged requests for single movie info lookups
+    private boolean hedgingEnabled;
 
 
  //*** Method of auto-injecting a webclient using a constructor
 
-    public MoviesInfoRestClient(WebClient webClient){
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient, MovieInfoCache movieInfoCache,
+                                @Qualifier("moviesInfoRetryPolicy") RetryPolicy retryPolicy,
+                                @Qualifier("moviesInfoHedgingPolicy") HedgingPolicy hedgingPolicy){
         this.webClient = webClient;
+        this.movieInfoCache = movieInfoCache;
+        this.retryPolicy = retryPolicy;
+        this.hedgingPolicy = hedgingPolicy;
     }
 
 
 
 
 
+    @PostConstruct
+    public void initBatcher() {
+        if (batchingEnabled) {
+            movieInfoBatcher = new MicroBatcher<>(batchingMaxBatchSize, Duration.ofNanos(batchingWindowMicros * 1000), batchingConcurrency, this::retrieveMovieInfosAsMap);
+        }
+    }
+
+    @PreDestroy
+    public void disposeBatcher() {
+        if (movieInfoBatcher != null) {
+            movieInfoBatcher.dispose();
+        }
+    }
+
+
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
 
-        var url = moviesInfoUrl.concat("/stream"); // refer movies-info-service.MoviesInfoController.getMovieInfoById()
+        // served from the near-cache when possible, only cache misses go to the movie info service
+        return movieInfoCache.get(movieId, this::retrieveMovieInfoUncached)
+                .transform(Deadline::bound);   // cancelled with a 504 once the deadline of the incoming request has passed. Refer DeadlineFilter
+    }
+
+
+    private Mono<MovieInfo> retrieveMovieInfoUncached(String movieId) {
+
+        if (singleFlightEnabled) {
+            return movieInfoCalls.execute(movieId, () -> fetchMovieInfoSingleOrBatched(movieId));
+        }
+        return fetchMovieInfoSingleOrBatched(movieId);
+    }
+
+
+    private Mono<MovieInfo> fetchMovieInfoSingleOrBatched(String movieId) {
+
+        if (movieInfoBatcher != null) {
+            return movieInfoBatcher.load(movieId)
+                    // an id missing from the batch response is reported the same way as a 404 from the single id call
+                    .switchIfEmpty(Mono.error(() -> new MoviesInfoClientException("There is no MovieInfo available for the passed in Id : " + movieId, HttpStatus.NOT_FOUND.value())));
+        }
+        return fetchMovieInfo(movieId);
+    }
+
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
+
+        var url = moviesInfoUrl.concat("/{id}"); // refer movies-info-service.MoviesInfoController.getMovieInfoById_approach2()
 
         //A RetryBackoffSpec preconfigured for fixed delays given a maximum number of retry attempts and the fixed Duration for the backoff.
         //var retrySpec = Retry.fixedDelay(3, Duration.ofSeconds(1));
@@ -48,7 +145,8 @@ public class MoviesInfoRestClient {
                 .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure())));   // propagate root cause of issue to client
         */
 
-        return webClient.get()
+        // one attempt of the call. Hedging may subscribe to it a second time, retries re-subscribe to the result
+        Supplier<Mono<MovieInfo>> attempt = () -> webClient.get()
                 .uri(url, movieId)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {      // onStatus is a function call to access error status ;we can then implement custom error handling
@@ -65,38 +163,76 @@ public class MoviesInfoRestClient {
                             .flatMap(response -> Mono.error(new MoviesInfoServerException("Server Exception in MoviesInfoService" + response)));
                 }))
 
-                .bodyToMono(MovieInfo.class)
+                .bodyToMono(MovieInfo.class);
+
+        var movieInfoMono = hedgingEnabled
+                ? hedgingPolicy.hedge(attempt)   // a second attempt is sent when the first one is slower than usual. Refer HedgingPolicy
+                : attempt.get();
+
+        return movieInfoMono
                // .retry(3)  // simple retry for 3 times when any of teh above exceptions(4xx, 5xx)  is thrown
                // .retryWhen(Retry.fixedDelay(3, Duration.ofSeconds(1)))  //A RetryBackoffSpec preconfigured for fixed delays given a maximum number of retry attempts and the fixed Duration for the backoff.
                // .retryWhen(retrySpec); // Moved the above parameter to a variable 'retrySpec'
                //.retryWhen(retrySpecWithFilter) // retrySpec variable with Filters
-                .retryWhen(RetryUtil.retrySpec()) // moved retry code to a separate class for reusability
+               //.retryWhen(RetryUtil.retrySpec()) // moved retry code to a separate class for reusability
+                .transform(retryPolicy::apply)   // per attempt timeout + exponential backoff with jitter within the retry budget. Refer RetryConfig
                 .log();
 
     }
 
 
-    public Flux<MovieInfo> retrieveMovieInfoStream() {
-
+    // Retrieve many movie infos in one call. Ids which do not exist are not part of the response.
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds) {
 
-        return webClient.get()
-                .uri(moviesInfoSubscribeUrl)
+        return webClient.post()
+                .uri(moviesInfoBatchUrl)
+                .bodyValue(movieIds)
                 .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {      // onStatus is a function call to access error status ;we can then implement custom error handling
+                .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
                     log.info("Status code : {}", clientResponse.statusCode().value());
-                    return clientResponse.bodyToMono(String.class)     // show the error response and code
+                    return clientResponse.bodyToMono(String.class)
                             .flatMap(response -> Mono.error(new MoviesInfoClientException(response, clientResponse.statusCode().value())));
                 }))
-                .onStatus(HttpStatus::is5xxServerError, (clientResponse -> {      // onStatus is a function call to access error status ;we can then implement custom error handling
+                .onStatus(HttpStatus::is5xxServerError, (clientResponse -> {
                     log.info("Status code : {}", clientResponse.statusCode().value());
-                    return clientResponse.bodyToMono(String.class)     // for all other errors, show the error response and code
+                    return clientResponse.bodyToMono(String.class)
                             .flatMap(response -> Mono.error(new MoviesInfoServerException("Server Exception in MoviesInfoService" + response)));
                 }))
-
                 .bodyToFlux(MovieInfo.class)
-                .retryWhen(RetryUtil.retrySpec()) // moved retry code to a separate class for reusability
-                .log();
+                .transform(retryPolicy::applyFlux);
+    }
+
 
+    private Mono<Map<String, MovieInfo>> retrieveMovieInfosAsMap(List<String> movieIds) {
+        return retrieveMovieInfos(movieIds)
+                .collectMap(MovieInfo::getMovieInfoId);
+    }
+
+
+    // Resumable movie info stream as Server Sent Events. The id of every event is its sequence id in the movie info feed,
+    // passing the last one seen as afterSeq resumes the stream right after it ( null : everything the feed still retains)
+    // Re-connecting and resuming is done by MovieInfoStreamHub, which shares this stream between all local subscribers
+    public Flux<ServerSentEvent<MovieInfo>> retrieveMovieInfoEvents(Long afterSeq) {
+
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoEventsUrl)
+                .queryParamIfPresent("after", Optional.ofNullable(afterSeq))
+                .toUriString();
+
+        return webClient.get()
+                .uri(url)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new MoviesInfoClientException(response, clientResponse.statusCode().value())));
+                }))
+                .onStatus(HttpStatus::is5xxServerError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new MoviesInfoServerException("Server Exception in MoviesInfoService" + response)));
+                }))
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<MovieInfo>>() {});
     }
 
 }
@@ -2,12 +2,23 @@ package com.reactivespring.client;
 
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieReviews;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.MicroBatcher;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import com.reactivespring.util.RetryPolicy;
+import com.reactivespring.util.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -16,6 +27,13 @@ import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 @Component
 @Slf4j
 public class ReviewsRestClient {
@@ -25,18 +43,123 @@ public class ReviewsRestClient {
     @Value("${restClient.reviewsUrl}")   // key-value pair is specified in application.yaml
     private String reviewsUrl;  // variable will contain value as specified in application.yaml
 
+    @Value("${restClient.reviews.singleFlight:true}")  // concurrent callers for the same movie id share one call to the reviews service
+    private boolean singleFlightEnabled;
+
+    private final SingleFlight<String, List<Review>> reviewCalls = new SingleFlight<>();
+
+    @Value("${restClient.reviewsBatchUrl:http://localhost:8081/v1/reviews/batch}")   // refer movies-review-service.ReviewHandler.getReviewsByMovieIds()
+    private String reviewsBatchUrl;
+
+    @Value("${restClient.reviews.batching.enabled:false}")  // gather single movie id lookups into batched calls
+    private boolean batchingEnabled;
+
+    @Value("${restClient.reviews.batching.maxBatchSize:50}")
+    private int batchingMaxBatchSize;
+
+    @Value("${restClient.reviews.batching.windowMicros:500}")   // max time a lookup waits for other lookups to join its batch
+    private long batchingWindowMicros;
+
+    @Value("${restClient.reviews.batching.concurrency:16}")   // max number of batched calls in flight
+    private int batchingConcurrency;
+
+    private MicroBatcher<String, List<Review>> reviewsBatcher;
+
+    private RetryPolicy retryPolicy;
+
+    private CircuitBreaker circuitBreaker;
+
+    private Bulkhead bulkhead;
+
     // auto inject web client via constructor
-    public ReviewsRestClient(WebClient webClient) {
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient, @Qualifier("reviewsRetryPolicy") RetryPolicy retryPolicy,
+                             @Qualifier("reviewsCircuitBreaker") CircuitBreaker circuitBreaker, @Qualifier("reviewsBulkhead") Bulkhead bulkhead) {
         this.webClient = webClient;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
     }
 
+    // true if the call was not made at all because the reviews service is shedding load : circuit breaker open or bulkhead full
+    public static boolean isLoadShed(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
+
+    @PostConstruct
+    public void initBatcher() {
+        if (batchingEnabled) {
+            reviewsBatcher = new MicroBatcher<>(batchingMaxBatchSize, Duration.ofNanos(batchingWindowMicros * 1000), batchingConcurrency, this::retrieveReviewsAsMap);
+        }
+    }
+
+    @PreDestroy
+    public void disposeBatcher() {
+        if (reviewsBatcher != null) {
+            reviewsBatcher.dispose();
+        }
+    }
+
+
     public Flux<Review> retrieveReview(String movieId){
 
+        // a Flux cannot be shared as a single result, so the reviews are shared as one list and flattened again for every caller
+        var reviews = singleFlightEnabled
+                ? reviewCalls.execute(movieId, () -> fetchReviewsSingleOrBatched(movieId).collectList())
+                : fetchReviewsSingleOrBatched(movieId).collectList();
+
+        return reviews
+                .transform(Deadline::bound)   // cancelled with a 504 once the deadline of the incoming request has passed. Refer DeadlineFilter
+                .flatMapIterable(Function.identity());
+    }
+
+
+    private Flux<Review> fetchReviewsSingleOrBatched(String movieId){
+
+        var reviewsFlux = reviewsBatcher != null
+                ? reviewsBatcher.load(movieId)
+                        .flatMapIterable(Function.identity())   // a movie without reviews is simply missing from the batch response
+                : fetchReviews(movieId);
+
+        return reviewsFlux
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))   // fails fast with CallNotPermittedException while the breaker is open
+                .transformDeferred(BulkheadOperator.of(bulkhead));   // fails fast with BulkheadFullException when too many calls are in flight
+    }
+
+
+    // Retrieve the reviews of many movies in one call, grouped by movie
+    public Flux<MovieReviews> retrieveReviews(List<String> movieIds){
+
+        return webClient.post()
+                .uri(reviewsBatchUrl)
+                .bodyValue(movieIds)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new ReviewsClientException(response)));
+                }))
+                .onStatus(HttpStatus::is5xxServerError, (clientResponse -> {
+                    log.info("Status code : {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(response -> Mono.error(new ReviewsServerException("Server Exception in REviews Service" + response)));
+                }))
+                .bodyToFlux(MovieReviews.class)
+                .transform(retryPolicy::applyFlux);
+    }
+
+
+    private Mono<Map<String, List<Review>>> retrieveReviewsAsMap(List<String> movieIds){
+        return retrieveReviews(movieIds)
+                .collectMap(MovieReviews::getMovieInfoId, MovieReviews::getReviews);
+    }
+
+
+    private Flux<Review> fetchReviews(String movieId){
+
 
         // Build url to include query parameter  for "movieInfoId"
         var url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
-                // ** Note : The query parm "movieInfoId" needs a space or some rando char in front else which the rest service will not works
-                .queryParam(" movieInfoId", movieId)   // build url by mapping provided id to movieInfoID which will be taken as a query parm
+                .queryParam("movieInfoId", movieId)   // build url by mapping provided id to movieInfoID which will be taken as a query parm
                 .buildAndExpand()
                 .toString();
 
@@ -57,7 +180,7 @@ public class ReviewsRestClient {
                             .flatMap(response -> Mono.error(new ReviewsServerException("Server Exception in REviews Service" + response)));
                 }))
                 .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .transform(retryPolicy::applyFlux)   // per attempt timeout + exponential backoff with jitter within the retry budget. Refer RetryConfig
                 .log();
 
 
@@ -0,0 +1,96 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.ReviewsClientException;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.HedgingPolicy;
+import com.reactivespring.util.LatencyTracker;
+import com.reactivespring.util.RetryBudget;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+@Configuration
+@Slf4j
+public class ResilienceConfig {
+
+    private final Environment environment;
+
+    public ResilienceConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    // Circuit breaker around ReviewsRestClient. Settings are read from restClient.reviews.circuitBreaker.* in application.yml
+    // 1. Opens when failureRateThreshold % of the last slidingWindowSize calls failed or were slower than slowCallDurationMillis
+    // 2. While open, calls fail right away with CallNotPermittedException and the movie is served without reviews
+    // 3. After waitDurationInOpenStateMillis a few trial calls decide whether it closes again
+    @Bean
+    public CircuitBreaker reviewsCircuitBreaker() {
+
+        var circuitBreaker = "restClient.reviews.circuitBreaker.";
+
+        var config = CircuitBreakerConfig.custom()
+                .slidingWindowSize(environment.getProperty(circuitBreaker + "slidingWindowSize", Integer.class, 20))
+                .minimumNumberOfCalls(environment.getProperty(circuitBreaker + "minimumNumberOfCalls", Integer.class, 10))
+                .failureRateThreshold(environment.getProperty(circuitBreaker + "failureRateThreshold", Float.class, 50f))
+                .slowCallDurationThreshold(Duration.ofMillis(environment.getProperty(circuitBreaker + "slowCallDurationMillis", Long.class, 1000L)))
+                .slowCallRateThreshold(environment.getProperty(circuitBreaker + "slowCallRateThreshold", Float.class, 80f))
+                .waitDurationInOpenState(Duration.ofMillis(environment.getProperty(circuitBreaker + "waitDurationInOpenStateMillis", Long.class, 10000L)))
+                .permittedNumberOfCallsInHalfOpenState(environment.getProperty(circuitBreaker + "permittedNumberOfCallsInHalfOpenState", Integer.class, 5))
+                .recordExceptions(ReviewsServerException.class, TimeoutException.class)   // server side problems count as failures
+                .ignoreExceptions(ReviewsClientException.class)   // a bad request does not say anything about the health of the service
+                .build();
+
+        var reviewsCircuitBreaker = CircuitBreaker.of("reviews", config);
+        reviewsCircuitBreaker.getEventPublisher()
+                .onStateTransition(event -> log.warn("Reviews circuit breaker : {}", event.getStateTransition()));
+        return reviewsCircuitBreaker;
+    }
+
+    // Bulkhead around ReviewsRestClient : limits the number of concurrent calls to the reviews service, so a slow reviews service
+    // cannot tie up all connections. Calls beyond the limit fail right away with BulkheadFullException. Refer restClient.reviews.bulkhead.*
+    @Bean
+    public Bulkhead reviewsBulkhead() {
+
+        var bulkhead = "restClient.reviews.bulkhead.";
+
+        var config = BulkheadConfig.custom()
+                .maxConcurrentCalls(environment.getProperty(bulkhead + "maxConcurrentCalls", Integer.class, 50))
+                .maxWaitDuration(Duration.ofMillis(environment.getProperty(bulkhead + "maxWaitMillis", Long.class, 0L)))
+                .build();
+
+        return Bulkhead.of("reviews", config);
+    }
+
+    // Hedged requests for MoviesInfoRestClient ( enabled by restClient.moviesInfo.hedging.enabled). Settings are read from restClient.moviesInfo.hedging.*
+    // 1. The hedge delay is the 'percentile' of the last 'samples' latencies, never below minDelayMillis. fallbackDelayMillis is used until enough samples exist
+    // 2. maxRatio caps hedges to a fraction of the requests ( 0.05 -> at most one hedge per 20 requests)
+    // Hedges sent are counted as restclient.hedges with the tag downstream=moviesInfo
+    @Bean
+    public HedgingPolicy moviesInfoHedgingPolicy(MeterRegistry meterRegistry) {
+
+        var hedging = "restClient.moviesInfo.hedging.";
+
+        var latencyTracker = new LatencyTracker(
+                environment.getProperty(hedging + "samples", Integer.class, 1024),
+                environment.getProperty(hedging + "minSamples", Integer.class, 100));
+
+        var hedgeBudget = new RetryBudget(environment.getProperty(hedging + "maxRatio", Double.class, 0.05), 0, 20);
+
+        return new HedgingPolicy("moviesInfo",
+                environment.getProperty(hedging + "percentile", Double.class, 0.95),
+                Duration.ofMillis(environment.getProperty(hedging + "minDelayMillis", Long.class, 10L)),
+                Duration.ofMillis(environment.getProperty(hedging + "fallbackDelayMillis", Long.class, 100L)),
+                latencyTracker,
+                hedgeBudget,
+                meterRegistry);
+    }
+}
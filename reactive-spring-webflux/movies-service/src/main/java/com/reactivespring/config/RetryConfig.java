@@ -0,0 +1,53 @@
+package com.reactivespring.config;
+
+import com.reactivespring.util.RetryBudget;
+import com.reactivespring.util.RetryPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+@Configuration
+public class RetryConfig {
+
+    private final Environment environment;
+
+    public RetryConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    // One retry policy per downstream service. Settings are read from restClient.<downstream>.retry.* in application.yml
+    // Retry counters are published as restclient.retries and restclient.retries.rejected with the tag downstream=<downstream>
+
+    @Bean
+    public RetryPolicy moviesInfoRetryPolicy(MeterRegistry meterRegistry) {
+        return buildRetryPolicy("moviesInfo", meterRegistry);
+    }
+
+    @Bean
+    public RetryPolicy reviewsRetryPolicy(MeterRegistry meterRegistry) {
+        return buildRetryPolicy("reviews", meterRegistry);
+    }
+
+
+    private RetryPolicy buildRetryPolicy(String downstream, MeterRegistry meterRegistry) {
+
+        var retry = "restClient." + downstream + ".retry.";
+
+        var retryBudget = new RetryBudget(
+                environment.getProperty(retry + "budget.ratio", Double.class, 0.2),   // at most one retry per 5 requests
+                environment.getProperty(retry + "budget.minPerSecond", Integer.class, 10),
+                environment.getProperty(retry + "budget.maxTokens", Double.class, 100.0));
+
+        return new RetryPolicy(downstream,
+                environment.getProperty(retry + "maxAttempts", Integer.class, 3),
+                Duration.ofMillis(environment.getProperty(retry + "minBackoffMillis", Long.class, 100L)),
+                Duration.ofMillis(environment.getProperty(retry + "maxBackoffMillis", Long.class, 2000L)),
+                environment.getProperty(retry + "jitter", Double.class, 0.5),
+                Duration.ofMillis(environment.getProperty(retry + "perAttemptTimeoutMillis", Long.class, 2000L)),
+                retryBudget,
+                meterRegistry);
+    }
+}
@@ -1,16 +1,80 @@
 package com.reactivespring.config;
 
+import com.reactivespring.util.Deadline;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
+@Slf4j
 public class WebClientConfig {
 
+    private final Environment environment;
+
+    public WebClientConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    // Every downstream service gets its own named connection pool, so a slow service cannot exhaust the connections of the other one.
+    // Settings are read from restClient.<downstream>.pool.* and restClient.<downstream>.transport.* in application.yml
+    // Pool metrics are published as reactor.netty.connection.provider.* with the tag name=<downstream> ( refer /actuator/metrics)
 
     @Bean
-    public WebClient webClient(WebClient.Builder builder){ // Builder is built for us by the WebClientAutoConfiguration.java
-       return builder.build(); // return automatically created web client instance for pur application
+    public WebClient moviesInfoWebClient(WebClient.Builder builder){ // Builder is built for us by the WebClientAutoConfiguration.java
+        return buildWebClient(builder, "moviesInfo");
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder){
+        return buildWebClient(builder, "reviews");
+    }
+
+
+    private WebClient buildWebClient(WebClient.Builder builder, String downstream) {
+
+        var pool = "restClient." + downstream + ".pool.";
+        var transport = "restClient." + downstream + ".transport.";
+
+        var connectionProvider = ConnectionProvider.builder(downstream)
+                .maxConnections(environment.getProperty(pool + "maxConnections", Integer.class, 100))
+                .pendingAcquireMaxCount(environment.getProperty(pool + "pendingAcquireMaxCount", Integer.class, 500))   // callers queued for a connection beyond this are rejected
+                .pendingAcquireTimeout(Duration.ofMillis(environment.getProperty(pool + "pendingAcquireTimeoutMillis", Long.class, 5000L)))
+                .maxIdleTime(Duration.ofMillis(environment.getProperty(pool + "maxIdleTimeMillis", Long.class, 30000L)))   // close connections idle for longer than this
+                .maxLifeTime(Duration.ofMillis(environment.getProperty(pool + "maxLifeTimeMillis", Long.class, 300000L)))
+                .evictInBackground(Duration.ofMillis(environment.getProperty(pool + "evictionIntervalMillis", Long.class, 30000L)))   // evict idle / expired connections without waiting for the next acquire
+                .metrics(true)
+                .build();
+
+        var httpClient = HttpClient.create(connectionProvider)
+                .runOn(HttpResources.get(), environment.getProperty(transport + "preferNative", Boolean.class, true))   // native epoll transport when available on the classpath
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, environment.getProperty(transport + "connectTimeoutMillis", Integer.class, 2000))
+                .compress(environment.getProperty(transport + "compression", Boolean.class, true))   // ask for gzip responses and decompress them
+                .metrics(true, uri -> downstream);   // tag client metrics by downstream instead of by uri to keep the number of meters bounded
+
+        var responseTimeoutMillis = environment.getProperty(transport + "responseTimeoutMillis", Long.class, 0L);
+        if (responseTimeoutMillis > 0) {   // not set by default as it would also end the long lived stream subscriptions
+            httpClient = httpClient.responseTimeout(Duration.ofMillis(responseTimeoutMillis));
+        }
+
+        if (environment.getProperty(transport + "h2c", Boolean.class, false)) {   // HTTP/2 without TLS, falls back to HTTP/1.1 when the server does not upgrade
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        log.info("WebClient for {} : pool {}", downstream, connectionProvider);
 
+        return builder.clone()   // clone() : the auto configured builder is shared, do not change it for the other downstream
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(Deadline.propagate())   // passes the remaining request budget downstream as X-Request-Timeout-Millis. Refer Deadline
+                .build();
     }
 }
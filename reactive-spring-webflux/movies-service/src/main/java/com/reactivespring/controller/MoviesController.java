@@ -4,45 +4,91 @@ import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.stream.MovieInfoStreamHub;
+import com.reactivespring.util.Conflation;
+import com.reactivespring.util.Deadline;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
 @RestController
 @RequestMapping("/v1/movies")
+@Slf4j
 public class MoviesController {
 
     private MoviesInfoRestClient moviesInfoRestClient;
 
     private ReviewsRestClient reviewsRestClient;
 
+    @Value("${movies.retrieve.parallel:true}")   // true : movie info and reviews are fetched at the same time, false : reviews are fetched after movie info
+    private boolean parallelRetrieve;
+
+    @Value("${movies.batch.concurrency:16}")   // max number of movies resolved against the downstream services at the same time
+    private int batchConcurrency;
+
+    @Value("${movies.batch.maxIds:200}")   // max number of ids accepted in a single batch request
+    private int batchMaxIds;
+
+    @Value("${movies.deadline.defaultMillis:5000}")   // deadline of every movie of a batch, the batch as a whole has none ( refer DeadlineFilter)
+    private long batchItemDeadlineMillis;
+
+    @Value("${movies.stream.concurrency:8}")   // max number of review lookups in flight for the live movie stream
+    private int streamConcurrency;
+
+
+    private MovieInfoStreamHub movieInfoStreamHub;
 
     // auto inject
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient, MovieInfoStreamHub movieInfoStreamHub) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
+        this.movieInfoStreamHub = movieInfoStreamHub;
     }
 
     @GetMapping("/{id}")   // wil lbe passed as a path variable in the request
     public Mono<Movie>  retrieveMoviebyId(@PathVariable("id") String movieId) {
+        return retrieveMovie(movieId, ReviewsRestClient::isLoadShed);
+    }
+
+
+    // servedWithoutReviews : failures of the review call on which the movie is served degraded ( without its reviews) instead of failing
+    private Mono<Movie> retrieveMovie(String movieId, Predicate<Throwable> servedWithoutReviews) {
+
+        if (parallelRetrieve) {
+            return retrieveMovieByIdConcurrently(movieId, servedWithoutReviews);
+        }
 
        // 1. Create a Movie using movieInfo and review
        // 2. Return  Mono<movie>
         return moviesInfoRestClient.retrieveMovieInfo(movieId) //// first call the movieInfosRestClient:Anytime a transformation needs ot be done on a reactive type, use a flatmap
                 .flatMap(movieInfo -> {  // we are using flat map as we need to transform the flux returned below from retrieveReview to a mono
-                     var reviewsListMono = reviewsRestClient.retrieveReview(movieId)
-                                                                              .collectList();  // collectList() will return a Mono<List<>>
+                     var reviewsListMono = retrieveReviewList(movieId, servedWithoutReviews);  // Mono<Optional<List<>>>, empty Optional when the reviews service sheds load
 
 
                     // Create a Mono<Movie> using Mono<List<Review>> using map operators
                     var movieMono = reviewsListMono.map(  // take each Review from List and create a Mono
-                            reviews ->  new Movie(movieInfo, reviews));  // we have used @AllArgsConstructor in Movies.java
+                            reviews ->  toMovie(movieInfo, reviews));
 
                     return movieMono;
 
@@ -52,10 +98,102 @@ public class MoviesController {
     }
 
 
+    // Both downstream calls are subscribed to at the same time, so the latency is roughly the slower of the two instead of their sum.
+    // zip() cancels the other source as soon as one fails, so a 404 from the movie info service cancels the in-flight review call.
+    private Mono<Movie> retrieveMovieByIdConcurrently(String movieId, Predicate<Throwable> servedWithoutReviews) {
+
+        var movieInfoMono = moviesInfoRestClient.retrieveMovieInfo(movieId);
+        var reviewsListMono = retrieveReviewList(movieId, servedWithoutReviews);
+
+        return Mono.zip(movieInfoMono, reviewsListMono, this::toMovie);
+    }
+
+
+    // Reviews of the movie. An empty Optional is returned instead of an error on the failures matched by servedWithoutReviews.
+    // A single movie only does so when the reviews service is shedding load ( circuit breaker open or bulkhead full) :
+    // the movie info alone is served fast rather than waiting on a slow reviews service
+    private Mono<Optional<List<Review>>> retrieveReviewList(String movieId, Predicate<Throwable> servedWithoutReviews) {
+
+        return reviewsRestClient.retrieveReview(movieId)
+                .collectList()  // collectList() will return a Mono<List<>>
+                .map(Optional::of)
+                .onErrorResume(servedWithoutReviews, ex -> {
+                    log.warn("Serving movie {} without reviews : {}", movieId, ex.getMessage());
+                    return Mono.just(Optional.empty());
+                });
+    }
+
+    private Movie toMovie(MovieInfo movieInfo, Optional<List<Review>> reviews) {
+        return reviews
+                .map(reviewList -> new Movie(movieInfo, reviewList))
+                .orElseGet(() -> Movie.degraded(movieInfo));
+    }
+
+
+
+    // Get many movies in one call : GET /v1/movies?ids=abc,def
+    // Results are streamed as NDJSON in order of arrival ( not in the order of the ids passed in)
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds) {
+        return retrieveMovies(movieIds);
+    }
+
+    // POST variant for long id lists which do not fit into a query string. Body is a json array of ids : ["abc","def"]
+    @PostMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> retrieveMoviesByIdsBody(@RequestBody List<String> movieIds) {
+        return retrieveMovies(movieIds);
+    }
+
 
+    private Flux<Movie> retrieveMovies(List<String> movieIds) {
+
+        if (movieIds.size() > batchMaxIds) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "A maximum of " + batchMaxIds + " ids can be requested at once"));
+        }
+
+        return Flux.fromIterable(movieIds)
+                .distinct()   // every id is resolved only once per request
+                // flatMap subscribes to at most 'batchConcurrency' movies at a time, so a page of 200 ids never opens 400 downstream calls at once
+                // one movie must not fail the whole page : a movie whose reviews fail ( server error, timeout, load shed) is served degraded,
+                // a movie whose movie info fails ( unknown id, server error, deadline exceeded) is left out
+                .flatMap(movieId -> retrieveMovie(movieId, ex -> true)
+                        .onErrorResume(ex -> {
+                            log.info("Skipping movie id {} in batch : {}", movieId, ex.getMessage());
+                            return Mono.empty();
+                        })
+                        // the clock starts when the movie is subscribed, not when the request came in : a movie waiting for its turn does not use up the budget of the others
+                        .contextWrite(context -> Deadline.with(context, Duration.ofMillis(batchItemDeadlineMillis))), batchConcurrency);
+    }
+
+
+    // Live stream of movies, ready to render : every streamed MovieInfo with the review count and average rating of the movie
+    // 1. Updates wait per movie id while the consumer falls behind. A newer update of a movie replaces the waiting one ( refer Conflation),
+    //    so a slow dashboard gets the latest state of every movie instead of an ever growing backlog
+    // 2. At most 'streamConcurrency' review lookups are in flight. flatMapSequential keeps the order of the updates
+    // 3. A movie whose reviews cannot be fetched is streamed as degraded instead of ending the stream
     @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> retrieveMovieInfo(){
-        return moviesInfoRestClient.retrieveMovieInfoStream();
+    public Flux<MovieSummary> retrieveMovieStream(){
+
+        return Conflation.latestPerKey(movieInfoStreamHub.subscribe(), MovieInfo::getMovieInfoId)
+                .flatMapSequential(this::toMovieSummary, streamConcurrency);
+    }
+
+    private Mono<MovieSummary> toMovieSummary(MovieInfo movieInfo) {
+
+        return reviewsRestClient.retrieveReview(movieInfo.getMovieInfoId())
+                .collectList()
+                .map(reviews -> MovieSummary.of(movieInfo, reviews))
+                .onErrorResume(ex -> {
+                    log.warn("Streaming movie {} without reviews : {}", movieInfo.getMovieInfoId(), ex.getMessage());
+                    return Mono.just(MovieSummary.degraded(movieInfo));
+                });
+    }
+
+    // raw movie info stream as relayed from the movie info service ( this used to be /stream)
+    // overflow : what happens when this client falls behind - DROP_OLDEST, DROP_LATEST or ERROR. Refer MovieInfoStreamHub
+    @GetMapping(value = "/stream/movieinfos", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfo> retrieveMovieInfo(@RequestParam(value = "overflow", required = false) BufferOverflowStrategy overflow){
+        return overflow != null ? movieInfoStreamHub.subscribe(overflow) : movieInfoStreamHub.subscribe();
     }
 
 
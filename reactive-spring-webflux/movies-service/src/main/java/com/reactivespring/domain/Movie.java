@@ -14,4 +14,15 @@ public class Movie {
 
     private MovieInfo movieInfo;
     private List<Review> reviewList;
+    private boolean degraded;   // true when the reviews could not be fetched and reviewList is left empty
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this(movieInfo, reviewList, false);
+    }
+
+    // Movie served without its reviews because the reviews service is shedding load ( circuit breaker open or bulkhead full),
+    // or, within a batch, because its reviews could not be fetched
+    public static Movie degraded(MovieInfo movieInfo) {
+        return new Movie(movieInfo, List.of(), true);
+    }
 }
@@ -1,6 +1,7 @@
 package com.reactivespring.domain;
 
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,6 +18,7 @@ import java.util.List;
 @AllArgsConstructor
 @Validated
 public class MovieInfo {
+    @JsonAlias("movieInfoID")   // the movie info service serializes its id as movieInfoID
     private String movieInfoId;
     @NotBlank(message = "movieInfo.name must be present")
     private String name;
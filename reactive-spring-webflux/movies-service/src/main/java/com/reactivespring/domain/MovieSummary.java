@@ -0,0 +1,31 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Ready to render record of the live movie stream ( /v1/movies/stream) : the movie info with its review figures
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieSummary {
+
+    private MovieInfo movieInfo;
+    private long reviewCount;
+    private Double averageRating;   // null when the movie has no ( rated) reviews yet
+    private boolean degraded;   // true when the reviews could not be fetched and reviewCount / averageRating are left empty
+
+    public static MovieSummary of(MovieInfo movieInfo, List<Review> reviews) {
+        var averageRating = reviews.stream()
+                .filter(review -> review.getRating() != null)
+                .mapToDouble(Review::getRating)
+                .average();
+        return new MovieSummary(movieInfo, reviews.size(), averageRating.isPresent() ? averageRating.getAsDouble() : null, false);
+    }
+
+    public static MovieSummary degraded(MovieInfo movieInfo) {
+        return new MovieSummary(movieInfo, 0, null, true);
+    }
+}
@@ -0,0 +1,55 @@
+package com.reactivespring.filter;
+
+import com.reactivespring.util.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// Sets the deadline of every incoming request ( refer Deadline)
+// 1. The budget is movies.deadline.defaultMillis, or less when the caller passed a smaller X-Request-Timeout-Millis header
+// 2. The deadline is put into the Reactor Context, where the REST clients pick it up, bound their calls and pass it downstream
+// NDJSON responses get no request deadline : the long lived stream subscriptions ( /stream, /stream/movieinfos) never end, and the batch
+// lookups ( GET / POST /v1/movies) stream their movies as they are resolved, every movie gets a deadline of its own ( refer MoviesController.retrieveMovies)
+@Component
+@Slf4j
+public class DeadlineFilter implements WebFilter {
+
+    private static final String BATCH_PATH = "/v1/movies";
+
+    @Value("${movies.deadline.defaultMillis:5000}")
+    private long defaultBudgetMillis;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        if (isStreamed(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+
+        var budgetMillis = defaultBudgetMillis;
+        var callerTimeout = exchange.getRequest().getHeaders().getFirst(Deadline.TIMEOUT_HEADER);
+        if (callerTimeout != null) {
+            try {
+                budgetMillis = Math.min(budgetMillis, Long.parseLong(callerTimeout));
+            } catch (NumberFormatException ex) {
+                log.info("Ignoring invalid {} header : {}", Deadline.TIMEOUT_HEADER, callerTimeout);
+            }
+        }
+
+        var budget = Duration.ofMillis(budgetMillis);
+        return chain.filter(exchange)
+                .contextWrite(context -> Deadline.with(context, budget));
+    }
+
+    private static boolean isStreamed(ServerHttpRequest request) {
+        var path = request.getPath().pathWithinApplication().value();
+        return path.contains("/stream") || path.equals(BATCH_PATH);
+    }
+}
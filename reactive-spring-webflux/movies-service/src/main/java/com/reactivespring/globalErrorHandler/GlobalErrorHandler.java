@@ -7,6 +7,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
 
 @ControllerAdvice
 @Slf4j
@@ -24,6 +25,17 @@ public class GlobalErrorHandler {
     }
 
 
+    // Global Error Handler which will be called when a ResponseStatusException is thrown. Keeps the status chosen by the thrower instead of falling back to 500
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<String> handleResponseStatusException(ResponseStatusException exception){
+        // log the error
+        log.error("Exception Caught in handleResponseStatusException: {}", exception.getMessage());
+
+        return ResponseEntity.status(exception.getStatus()).body(exception.getReason());
+
+    }
+
+
     // Global Error Handler which will be called when a Runtime exception is thrown
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException exception){
@@ -0,0 +1,79 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One shared subscription to the movie info events ( /v1/movieinfos/events of movies-info-service) for all local subscribers
+// 1. However many clients are streaming, there is a single upstream connection and every event is deserialized once
+// 2. The upstream is connected with the first subscriber and released when the last one leaves ( publish().refCount())
+// 3. When the upstream completes or drops, it is re-connected with exponential backoff and resumed after the sequence id of the last event received
+// 4. Every subscriber gets its own bounded buffer : a slow subscriber loses events according to its overflow policy, it never slows down the others
+// 5. subscribe() hands out new and changed movie infos, deletes() the ids of deleted ones
+@Component
+@Slf4j
+public class MovieInfoStreamHub {
+
+    static final String DELETE = "delete";   // event type of a deleted movie info, its data only carries the id
+
+    private final Flux<ServerSentEvent<MovieInfo>> sharedEvents;
+
+    private final AtomicReference<Long> lastSeq = new AtomicReference<>();   // sequence id of the last event received, used to resume after a reconnect
+
+    @Value("${movies.stream.subscriberBufferSize:256}")
+    private int subscriberBufferSize;
+
+    @Value("${movies.stream.overflow:DROP_OLDEST}")   // DROP_OLDEST, DROP_LATEST or ERROR ( ends the stream of the subscriber)
+    private BufferOverflowStrategy defaultOverflow;
+
+    public MovieInfoStreamHub(MoviesInfoRestClient moviesInfoRestClient,
+                              @Value("${movies.stream.reconnect.minBackoffMillis:1000}") long minBackoffMillis,
+                              @Value("${movies.stream.reconnect.maxBackoffMillis:30000}") long maxBackoffMillis) {
+
+        this.sharedEvents = Flux.defer(() -> moviesInfoRestClient.retrieveMovieInfoEvents(lastSeq.get()))   // resume : only events after the last one received
+                .doOnNext(event -> {
+                    if (event.id() != null) {
+                        lastSeq.set(Long.valueOf(event.id()));
+                    }
+                })
+                .filter(event -> event.data() != null)   // comment / keep-alive events carry no movie info
+                .repeatWhen(completed -> completed.delayElements(Duration.ofMillis(minBackoffMillis)))   // the upstream completes after a while, so re-connect
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(minBackoffMillis))   // keep re-connecting while the movie info service is down
+                        .maxBackoff(Duration.ofMillis(maxBackoffMillis))
+                        .doBeforeRetry(retrySignal -> log.warn("MovieInfo stream dropped, re-connecting : {}", retrySignal.failure().getMessage())))
+                .publish()
+                .refCount();
+    }
+
+    public Flux<MovieInfo> subscribe() {
+        return subscribe(defaultOverflow);
+    }
+
+    public Flux<MovieInfo> subscribe(BufferOverflowStrategy overflow) {
+        return sharedEvents
+                .filter(event -> !DELETE.equals(event.event()))   // a delete only carries the id, stream subscribers get new and changed movie infos
+                .map(ServerSentEvent::data)
+                .onBackpressureBuffer(subscriberBufferSize,
+                        dropped -> log.debug("Slow stream subscriber, dropped MovieInfo {}", dropped.getMovieInfoId()),
+                        overflow);
+    }
+
+    // Ids of the deleted movie infos ( refer MovieInfoCacheRefresher), over the same upstream connection as subscribe()
+    public Flux<String> deletes() {
+        return sharedEvents
+                .filter(event -> DELETE.equals(event.event()))
+                .map(event -> event.data().getMovieInfoId())
+                .onBackpressureBuffer(subscriberBufferSize,
+                        dropped -> log.debug("Slow delete subscriber, dropped delete of MovieInfo {}", dropped),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,101 @@
+package com.reactivespring.util;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Per key conflation of a stream of updates
+// 1. The source is consumed as fast as it emits, updates wait in a map keyed by e.g. the movie id
+// 2. While the consumer keeps up every update is passed on as it arrives
+// 3. When the consumer falls behind, a newer update of a key replaces the one still waiting ( it keeps its place in the queue),
+//    so the consumer only ever sees the latest state of each key and at most one waiting update per key is held in memory
+public class Conflation {
+
+    public static <T, K> Flux<T> latestPerKey(Flux<T> source, Function<T, K> keyFunction) {
+
+        return Flux.create(sink -> {
+            var pending = new LinkedHashMap<K, T>();
+            var drainer = new Drainer<>(sink, pending);
+
+            var subscription = source.subscribe(
+                    value -> {
+                        synchronized (pending) {
+                            pending.put(keyFunction.apply(value), value);   // put() on an existing key keeps its position in the queue
+                        }
+                        drainer.drain();
+                    },
+                    error -> drainer.terminate(error),
+                    () -> drainer.terminate(null));
+
+            sink.onRequest(n -> drainer.drain());
+            sink.onDispose(subscription);
+        });
+    }
+
+    // emits waiting updates as far as the consumer has requested them. The wip counter makes sure only one thread emits at a time
+    private static class Drainer<K, T> {
+
+        private final FluxSink<T> sink;
+
+        private final LinkedHashMap<K, T> pending;
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean done;
+
+        private volatile Throwable error;
+
+        private Drainer(FluxSink<T> sink, LinkedHashMap<K, T> pending) {
+            this.sink = sink;
+            this.pending = pending;
+        }
+
+        private void terminate(Throwable error) {
+            this.error = error;
+            this.done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;   // another thread is emitting and will pick up the new work
+            }
+            var missed = 1;
+            for (;;) {
+                while (sink.requestedFromDownstream() > 0) {
+                    T next;
+                    synchronized (pending) {
+                        var iterator = pending.values().iterator();
+                        if (!iterator.hasNext()) {
+                            break;
+                        }
+                        next = iterator.next();
+                        iterator.remove();
+                    }
+                    sink.next(next);
+                }
+
+                boolean empty;
+                synchronized (pending) {
+                    empty = pending.isEmpty();
+                }
+                if (done && (empty || error != null)) {
+                    if (error != null) {
+                        sink.error(error);
+                    } else {
+                        sink.complete();
+                    }
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.reactivespring.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Request deadline carried in the Reactor Context ( set on entry by DeadlineFilter)
+// 1. bound() cancels a call once the remaining budget of the request runs out
+// 2. propagate() passes the remaining budget downstream in the X-Request-Timeout-Millis header.
+//    A relative timeout is sent instead of an absolute time, so clock differences between hosts do not matter
+public class Deadline {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Millis";
+
+    private static final String CONTEXT_KEY = "requestDeadlineNanos";
+
+    public static Context with(Context context, Duration budget) {
+        return context.put(CONTEXT_KEY, System.nanoTime() + budget.toNanos());
+    }
+
+    public static Optional<Duration> remaining(ContextView context) {
+        return context.<Long>getOrEmpty(CONTEXT_KEY)
+                .map(deadlineNanos -> Duration.ofNanos(deadlineNanos - System.nanoTime()));
+    }
+
+    public static <T> Mono<T> bound(Mono<T> mono) {
+        return Mono.deferContextual(context -> remaining(context)
+                .map(remaining -> remaining.isNegative() || remaining.isZero()
+                        ? Mono.<T>error(deadlineExceeded())   // nothing left of the budget, do not even start the call
+                        : mono.timeout(remaining, Mono.error(Deadline::deadlineExceeded)))   // timeout() cancels the call when the budget runs out
+                .orElse(mono));
+    }
+
+    public static ExchangeFilterFunction propagate() {
+        return (request, next) -> Mono.deferContextual(context -> remaining(context)
+                .map(remaining -> next.exchange(ClientRequest.from(request)
+                        .header(TIMEOUT_HEADER, String.valueOf(Math.max(0, remaining.toMillis())))
+                        .build()))
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    public static ResponseStatusException deadlineExceeded() {
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Request deadline exceeded");
+    }
+}
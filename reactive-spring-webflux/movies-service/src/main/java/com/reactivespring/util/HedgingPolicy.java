@@ -0,0 +1,68 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// Hedged requests to cut tail latency ( refer ResilienceConfig for the settings)
+// 1. The first attempt is sent right away
+// 2. If it has not answered after the hedge delay ( a percentile of the recently observed latencies), a second identical attempt is sent
+// 3. Whichever attempt signals first wins and the other one is cancelled
+// 4. Hedges are capped by a budget to a small fraction of the traffic, so hedging cannot double the load during a slowdown
+public class HedgingPolicy {
+
+    private final double percentile;
+
+    private final Duration minDelay;
+
+    private final Duration fallbackDelay;
+
+    private final LatencyTracker latencyTracker;
+
+    private final RetryBudget hedgeBudget;
+
+    private final Counter hedges;   // hedged attempts sent
+
+    public HedgingPolicy(String downstream, double percentile, Duration minDelay, Duration fallbackDelay,
+                         LatencyTracker latencyTracker, RetryBudget hedgeBudget, MeterRegistry meterRegistry) {
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.fallbackDelay = fallbackDelay;
+        this.latencyTracker = latencyTracker;
+        this.hedgeBudget = hedgeBudget;
+        this.hedges = Counter.builder("restclient.hedges")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> attempt) {
+
+        return Mono.defer(() -> {
+            hedgeBudget.recordRequest();
+
+            var hedgeDelay = hedgeDelay();
+            var primary = timed(attempt);
+            var hedged = Mono.delay(hedgeDelay)
+                    // never() : without budget the hedge simply does not take part, the primary attempt decides the outcome
+                    .flatMap(tick -> hedgeBudget.tryAcquire() ? timed(attempt).doOnSubscribe(subscription -> hedges.increment()) : Mono.<T>never());
+
+            return Mono.firstWithSignal(primary, hedged);   // first signal wins, the loser is cancelled
+        });
+    }
+
+    public Duration hedgeDelay() {
+        var delay = latencyTracker.percentile(percentile, fallbackDelay);
+        return delay.compareTo(minDelay) < 0 ? minDelay : delay;
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> attempt) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return attempt.get()
+                    .doOnSuccess(value -> latencyTracker.record(System.nanoTime() - start));
+        });
+    }
+}
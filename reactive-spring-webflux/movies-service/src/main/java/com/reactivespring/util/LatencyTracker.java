@@ -0,0 +1,54 @@
+package com.reactivespring.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Keeps the last 'size' latency samples in a ring buffer and reports a percentile of them.
+// The percentile is recomputed at most once per second, so reading it on every request stays cheap.
+public class LatencyTracker {
+
+    private static final long RECOMPUTE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final AtomicLongArray samples;
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private final int minSamples;
+
+    private volatile long percentileNanos = -1;
+
+    private volatile long computedAt;
+
+    public LatencyTracker(int size, int minSamples) {
+        this.samples = new AtomicLongArray(size);
+        this.minSamples = minSamples;
+    }
+
+    public void record(long latencyNanos) {
+        var index = recorded.getAndIncrement() % samples.length();
+        samples.set((int) index, latencyNanos);
+    }
+
+    // percentile ( e.g. 0.95) of the recorded latencies, or 'fallback' until minSamples latencies have been recorded
+    public Duration percentile(double percentile, Duration fallback) {
+
+        var count = (int) Math.min(recorded.get(), samples.length());
+        if (count < minSamples) {
+            return fallback;
+        }
+
+        var now = System.nanoTime();
+        if (percentileNanos < 0 || now - computedAt > RECOMPUTE_INTERVAL_NANOS) {
+            var sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            percentileNanos = sorted[(int) Math.min(count - 1, Math.floor(percentile * count))];
+            computedAt = now;
+        }
+        return Duration.ofNanos(percentileNanos);
+    }
+}
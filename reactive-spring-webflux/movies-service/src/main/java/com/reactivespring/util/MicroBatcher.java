@@ -0,0 +1,144 @@
+package com.reactivespring.util;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// DataLoader style micro-batching of single key lookups.
+// 1. Every load(key) call is queued instead of being sent on its own
+// 2. The queue is flushed as one batch when maxBatchSize keys are waiting or the window has elapsed, whichever comes first
+// 3. One batched call is made per flush and its result map is split back out to each waiting caller. At most 'concurrency' batched calls are in flight,
+//    further batches wait for one of them to finish
+// Keys missing from the result map complete their callers empty. A failed batch fails every caller in it.
+// Should the batching pipeline itself fail, every waiting caller is failed and a new pipeline is started, so no load is left hanging.
+@Slf4j
+public class MicroBatcher<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private final int maxBatchSize;
+
+    private final Duration window;
+
+    private final int concurrency;
+
+    private final Function<List<K>, Mono<Map<K, V>>> batchLoader;
+
+    // loads not answered yet, failed all at once when the pipeline fails
+    private final Set<PendingLoad<K, V>> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile Sinks.Many<PendingLoad<K, V>> pendingLoads;
+
+    private volatile Disposable subscription;
+
+    private volatile boolean disposed;
+
+    public MicroBatcher(int maxBatchSize, Duration window, Function<List<K>, Mono<Map<K, V>>> batchLoader) {
+        this(maxBatchSize, window, DEFAULT_CONCURRENCY, batchLoader);
+    }
+
+    public MicroBatcher(int maxBatchSize, Duration window, int concurrency, Function<List<K>, Mono<Map<K, V>>> batchLoader) {
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.concurrency = concurrency;
+        this.batchLoader = batchLoader;
+        start();
+    }
+
+    public Mono<V> load(K key) {
+        return Mono.defer(() -> {
+            Sinks.One<V> result = Sinks.one();
+            var pendingLoad = new PendingLoad<>(key, result);
+            pending.add(pendingLoad);
+
+            Sinks.EmitResult emitResult;
+            // concurrent callers may emit at the same time; retry instead of dropping the request when that happens
+            while ((emitResult = pendingLoads.tryEmitNext(pendingLoad)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (emitResult.isFailure()) {   // the pipeline has just failed or the batcher is disposed
+                result.tryEmitError(new IllegalStateException("Batching pipeline not running : " + emitResult));
+            }
+            return result.asMono()
+                    .doFinally(signal -> pending.remove(pendingLoad));
+        });
+    }
+
+    public synchronized void dispose() {
+        disposed = true;
+        subscription.dispose();
+    }
+
+    private synchronized void start() {
+
+        if (disposed) {
+            return;
+        }
+
+        var sink = Sinks.many().unicast().<PendingLoad<K, V>>onBackpressureBuffer();
+        pendingLoads = sink;
+        subscription = sink.asFlux()
+                .bufferTimeout(maxBatchSize, window)   // flush on size or on time
+                // bufferTimeout() cannot wait for its downstream when the timer fires, so batches wait here while 'concurrency' batches are in flight
+                .onBackpressureBuffer()
+                .flatMap(this::dispatch, concurrency)
+                .subscribe(null, this::restart);
+    }
+
+    private void restart(Throwable ex) {
+        log.error("Batching pipeline failed, restarting it : {}", ex.getMessage());
+        var stranded = List.copyOf(pending);   // queued in the failed pipeline, they would never be answered
+        start();
+        stranded.forEach(pendingLoad -> pendingLoad.getResult().tryEmitError(ex));
+    }
+
+    private Mono<Void> dispatch(List<PendingLoad<K, V>> batch) {
+
+        var keys = batch.stream()
+                .map(PendingLoad::getKey)
+                .distinct()   // the same key may be requested more than once within a window
+                .collect(Collectors.toList());
+
+        return batchLoader.apply(keys)
+                .defaultIfEmpty(Map.of())
+                .doOnNext(results -> batch.forEach(pendingLoad -> {
+                    var value = results.get(pendingLoad.getKey());
+                    if (value == null) {
+                        pendingLoad.getResult().tryEmitEmpty();
+                    } else {
+                        pendingLoad.getResult().tryEmitValue(value);
+                    }
+                }))
+                .doOnError(ex -> batch.forEach(pendingLoad -> pendingLoad.getResult().tryEmitError(ex)))
+                .onErrorResume(ex -> Mono.empty())   // a failed batch must not terminate the batching pipeline
+                .then();
+    }
+
+    private static class PendingLoad<K, V> {
+
+        private final K key;
+        private final Sinks.One<V> result;
+
+        PendingLoad(K key, Sinks.One<V> result) {
+            this.key = key;
+            this.result = result;
+        }
+
+        K getKey() {
+            return key;
+        }
+
+        Sinks.One<V> getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.util;
+
+// Caps retries to a fraction of the live traffic, so retries can never multiply the load on a struggling downstream service.
+// 1. Every request deposits 'ratio' tokens ( e.g. 0.2 -> at most one retry per 5 requests), up to maxTokens
+// 2. Every retry withdraws one token
+// 3. A small reserve of minPerSecond retries is always allowed, so a service with little traffic can still retry
+public class RetryBudget {
+
+    private final double ratio;
+
+    private final int minPerSecond;
+
+    private final double maxTokens;
+
+    private double tokens;
+
+    private long reserveWindowStart = System.nanoTime();
+
+    private int reserveUsed;
+
+    public RetryBudget(double ratio, int minPerSecond, double maxTokens) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.maxTokens = maxTokens;
+    }
+
+    public synchronized void recordRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    // true if a retry may be sent now. Consumes budget when it returns true.
+    public synchronized boolean tryAcquire() {
+
+        var now = System.nanoTime();
+        if (now - reserveWindowStart >= 1_000_000_000L) {   // start a new one second window for the reserve
+            reserveWindowStart = now;
+            reserveUsed = 0;
+        }
+        if (reserveUsed < minPerSecond) {
+            reserveUsed++;
+            return true;
+        }
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// Retry settings of one downstream service ( refer RetryConfig) :
+// exponential backoff with jitter, a timeout per attempt, a retry budget shared by all requests and retry counters.
+// The Retry spec itself is built by RetryUtil.retrySpec(RetryPolicy)
+@Getter
+public class RetryPolicy {
+
+    private final String downstream;
+    private final int maxAttempts;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final double jitter;
+    private final Duration perAttemptTimeout;
+    private final RetryBudget retryBudget;
+
+    private final Counter retries;           // retries sent
+    private final Counter retriesRejected;   // retries not sent because the retry budget was used up
+
+    public RetryPolicy(String downstream, int maxAttempts, Duration minBackoff, Duration maxBackoff, double jitter,
+                       Duration perAttemptTimeout, RetryBudget retryBudget, MeterRegistry meterRegistry) {
+        this.downstream = downstream;
+        this.maxAttempts = maxAttempts;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.jitter = jitter;
+        this.perAttemptTimeout = perAttemptTimeout;
+        this.retryBudget = retryBudget;
+        this.retries = Counter.builder("restclient.retries")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.retriesRejected = Counter.builder("restclient.retries.rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    // Apply the per attempt timeout and the retries to a single request
+    public <T> Mono<T> apply(Mono<T> attempt) {
+        return attempt
+                .timeout(perAttemptTimeout)   // every attempt gets its own timeout, a timed out attempt can be retried
+                .retryWhen(RetryUtil.retrySpec(this))
+                .doOnSubscribe(subscription -> retryBudget.recordRequest());   // subscribed once per request, not once per attempt
+    }
+
+    // A streamed response is collected per attempt : the timeout bounds the whole attempt instead of the gap between two items,
+    // and a retry after a response which failed half way does not hand out the items of the failed attempt a second time
+    public <T> Flux<T> applyFlux(Flux<T> attempt) {
+        return apply(attempt.collectList())
+                .flatMapIterable(Function.identity());
+    }
+}
@@ -3,10 +3,13 @@ package com.reactivespring.util;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 import reactor.util.retry.RetrySpec;
 
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 
 public class RetryUtil {
 
@@ -17,4 +20,45 @@ public class RetryUtil {
                 //Set the generator for the Exception to be propagated when the maximum amount of retries is exhausted
                 .onRetryExhaustedThrow((((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure()))));  // propagate root cause of issue to client
     }
+
+
+    // Retry spec for a downstream service as configured by its RetryPolicy
+    // 1. Exponential backoff starting at minBackoff, capped at maxBackoff, with jitter so that retries of many requests do not arrive in lock step
+    // 2. Server errors and timed out attempts are retried, at most maxAttempts attempts in total ( the first call included)
+    // 3. A retry is only sent while the retry budget allows it. Otherwise the original error is propagated right away
+    // The budget is asked last, once a retry would otherwise be sent : a non retryable error or the failure after the last attempt takes no token
+    public static Retry retrySpec(RetryPolicy retryPolicy){
+        return Retry.from(retrySignals -> retrySignals.concatMap(retrySignal -> {
+            var failure = retrySignal.failure();
+            if (!isRetryable(failure) || retrySignal.totalRetries() + 1 >= retryPolicy.getMaxAttempts() || !withinBudget(retryPolicy)) {
+                return Mono.error(failure);   // propagate root cause of issue to client
+            }
+            retryPolicy.getRetries().increment();
+            return Mono.delay(backoff(retryPolicy, retrySignal.totalRetries()));
+        }));
+    }
+
+    // minBackoff * 2^retry capped at maxBackoff, moved randomly by up to +/- jitter of itself ( still within minBackoff and maxBackoff)
+    static Duration backoff(RetryPolicy retryPolicy, long retry) {
+        var minMillis = retryPolicy.getMinBackoff().toMillis();
+        var maxMillis = retryPolicy.getMaxBackoff().toMillis();
+        var delay = Math.min(minMillis * (1L << Math.min(retry, 30)), maxMillis);
+        var jitter = (long) (delay * retryPolicy.getJitter());
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+        }
+        return Duration.ofMillis(Math.max(minMillis, Math.min(delay, maxMillis)));
+    }
+
+    private static boolean isRetryable(Throwable ex) {
+        return ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException || ex instanceof TimeoutException;
+    }
+
+    private static boolean withinBudget(RetryPolicy retryPolicy) {
+        if (retryPolicy.getRetryBudget().tryAcquire()) {
+            return true;
+        }
+        retryPolicy.getRetriesRejected().increment();
+        return false;
+    }
 }
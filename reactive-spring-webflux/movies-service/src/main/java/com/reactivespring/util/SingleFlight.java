@@ -0,0 +1,45 @@
+package com.reactivespring.util;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// In-flight de-duplication of calls by key.
+// Concurrent callers for the same key share one upstream Mono instead of each starting their own call.
+// The shared entry is removed as soon as the upstream completes or fails, so the next caller after that triggers a fresh call.
+// When every caller has cancelled ( e.g. client gone, deadline passed) the upstream call is cancelled as well and its entry removed.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+
+        // defer() : the lookup happens at subscription time, not when the pipeline is assembled
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> share(k, call.get())));
+    }
+
+    private Mono<V> share(K key, Mono<V> call) {
+
+        var self = new AtomicReference<Mono<V>>();
+        // remove(key, self) : only this call's entry. A late signal must not remove a newer call for the same key
+        Runnable removeSelf = () -> inFlight.remove(key, self.get());
+
+        var shared = call
+                .doOnTerminate(removeSelf)   // value, empty or error : runs before the result reaches the callers
+                .doOnCancel(removeSelf)   // the last caller cancelled
+                .flux()
+                .publish()
+                .refCount()   // all callers share the one upstream subscription, it is cancelled once none is left
+                .singleOrEmpty();
+        self.set(shared);
+        return shared;
+    }
+
+    // number of calls currently in flight
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -3,9 +3,11 @@ package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.domain.Movie;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -16,9 +18,12 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 
 
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;  // required for stubFor()
 import static org.junit.jupiter.api.Assertions.assertEquals; // required fro assertEquals()
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)   // will spin up Spring app in a random port
 @ActiveProfiles("test")   // Ensure this is different to all other profiles provided in  application.yml
@@ -26,17 +31,23 @@ import static org.junit.jupiter.api.Assertions.assertEquals; // required fro ass
 @AutoConfigureWireMock(port = 8084) //automatically spins a httpserver in port  8084
 @TestPropertySource(properties = {
         "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos_2",   // Override port definition in application.yml
-        "restClient.reviewsUrl=http://localhost:8084/v1/reviews/qp"         // actual app runs on 8081
+        "restClient.reviewsUrl=http://localhost:8084/v1/reviews/qp",         // actual app runs on 8081
+        "restClient.moviesInfo.cache.enabled=false"   // every test stubs a different response for the same movie id
 })
 public class MoviesControllerIntgTest {
 
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    @Qualifier("reviewsCircuitBreaker")
+    CircuitBreaker reviewsCircuitBreaker;
+
 
     @BeforeEach
     void setup(){
         WireMock.reset();
+        reviewsCircuitBreaker.reset();   // failures recorded by one test must not open the breaker for the next one
     }
 
 
@@ -93,7 +104,7 @@ public class MoviesControllerIntgTest {
         // csll will first be made to MoviesInfoRestClient.retrieveMovieInfo via the .get in the //when section
         // ReviewsRestClient.java: the call will be transferred to the wiremock after .retrieve() in retrieveReview(String movieId) function
         stubFor(get(urlPathEqualTo("/v1/reviews/qp"))  // url path is Review url for request parm
-                .withQueryParam("%20movieInfoId", equalTo(movieId))  //Pass the Query Parm. For some reason we need to append a leading space encoded as %20 as else the Query parm will not work.
+                .withQueryParam("movieInfoId", equalTo(movieId))
                 .willReturn(aResponse()
                         .withHeader("Content-Type", "application/json")
                         .withBodyFile("reviews.json")));  // reviews.json is available in resources/__files. This will be provided as a response
@@ -115,6 +126,65 @@ public class MoviesControllerIntgTest {
     }
 
 
+    @Test
+    void retrieveMovieById_onlyItsOwnReviews(){
+
+        //given : reviews of two movies. Without a movieInfoId the reviews service returns every review ( findAll)
+        stubFor(get(urlPathMatching("/v1/movieinfos_2/(abc|def)"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/qp"))
+                .atPriority(10)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[" + review("1", "abc") + "," + review("2", "abc") + "," + review("3", "def") + "]")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/qp"))
+                .withQueryParam("movieInfoId", equalTo("abc"))
+                .atPriority(1)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[" + review("1", "abc") + "," + review("2", "abc") + "]")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/qp"))
+                .withQueryParam("movieInfoId", equalTo("def"))
+                .atPriority(1)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[" + review("3", "def") + "]")));
+
+        //when
+
+        //then
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "abc")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(2, Objects.requireNonNull(movie).getReviewList().size());
+                    assertTrue(movie.getReviewList().stream().allMatch(review -> review.getMovieInfoId().equals("abc")));
+                });
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "def")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(1, Objects.requireNonNull(movie).getReviewList().size());
+                    assertEquals("def", movie.getReviewList().get(0).getMovieInfoId());
+                });
+
+        WireMock.verify(0, getRequestedFor(urlEqualTo("/v1/reviews/qp")));   // never asked without the movieInfoId
+    }
+
+    private static String review(String reviewId, String movieInfoId) {
+        return "{\"reviewId\":\"" + reviewId + "\",\"movieInfoId\":\"" + movieInfoId + "\",\"comment\":\"Awesome Movie\",\"rating\":9.0}";
+    }
+
+
     @Test
     void retrieveMovieById_404(){
 
@@ -167,7 +237,7 @@ public class MoviesControllerIntgTest {
         // ReviewsRestClient.java: the call will be transferred to the wiremock after .retrieve() in retrieveReview(String movieId) function
         //stubFor(get(urlPathEqualTo("/v1/reviews/qp"))  // url path is Review url for request parm
                 stubFor(get(urlPathEqualTo("/v1/reviews/qp"))  // url path is Review url for request parm
-                        .withQueryParam("%20movieInfoId", equalTo(movieId)) // //Pass the Query Parm. For some reason we need to append a leading space encoded as %20 as else the Query parm will not work.
+                        .withQueryParam("movieInfoId", equalTo(movieId))
                         .willReturn(aResponse()
                         .withStatus(404)));
 
@@ -192,6 +262,36 @@ public class MoviesControllerIntgTest {
     }
 
 
+    @Test
+    void retrieveMovieById_reviewsCircuitOpen(){
+
+        //given
+        var movieId = "abc";
+        stubFor(get(urlEqualTo("/v1/movieinfos_2/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        reviewsCircuitBreaker.transitionToOpenState();   // reviews service considered unhealthy
+
+        //when
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertTrue(Objects.requireNonNull(movie).isDegraded());
+                    assertEquals(0, movie.getReviewList().size());
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                });
+
+        //then
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews/qp")));   // no call is made while the breaker is open
+
+    }
+
+
     @Test
     void retrieveMovieById_5xx(){
 
@@ -241,7 +341,7 @@ public class MoviesControllerIntgTest {
         // ReviewsRestClient.java: the call will be transferred to the wiremock after .retrieve() in retrieveReview(String movieId) function
         //stubFor(get(urlPathEqualTo("/v1/reviews/qp"))  // url path is Review url for request parm
         stubFor(get(urlPathEqualTo("/v1/reviews/qp"))  // url path is Review url for request parm
-                .withQueryParam("%20movieInfoId", equalTo(movieId)) // //Pass the Query Parm. For some reason we need to append a leading space encoded as %20 as else the Query parm will not work.
+                .withQueryParam("movieInfoId", equalTo(movieId))
                 .willReturn(aResponse()
                         .withStatus(500)
                                 .withBody(": Review Service is Unavailable")));
@@ -265,4 +365,56 @@ public class MoviesControllerIntgTest {
     }
 
 
+
+    @Test
+    void retrieveMoviesByIds(){
+
+        //given
+        // "abc" and "def" resolve, "xyz" is unknown to the movie info service and is skipped in the batch response
+        stubFor(get(urlPathMatching("/v1/movieinfos_2/(abc|def)"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlEqualTo("/v1/movieinfos_2/xyz"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+        stubFor(get(urlPathEqualTo("/v1/reviews/qp"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        //when
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/v1/movies")
+                        .queryParam("ids", "abc,def,xyz,abc")   // duplicate ids are resolved once
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class)
+                .hasSize(2);
+
+        //then
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos_2/abc")));
+
+    }
+
+
+    @Test
+    void retrieveMoviesByIds_tooManyIds(){
+
+        //given
+        var movieIds = IntStream.rangeClosed(1, 201)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList());
+
+        //when
+        webTestClient.post()
+                .uri("/v1/movies")
+                .bodyValue(movieIds)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+    }
+
+
 }
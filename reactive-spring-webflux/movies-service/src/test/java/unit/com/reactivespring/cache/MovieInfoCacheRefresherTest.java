@@ -0,0 +1,87 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.stream.MovieInfoStreamHub;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoCacheRefresherTest {
+
+    MoviesInfoRestClient moviesInfoRestClient = mock(MoviesInfoRestClient.class);
+
+    Sinks.Many<ServerSentEvent<MovieInfo>> upstream = Sinks.many().multicast().directBestEffort();
+
+    MovieInfoCache movieInfoCache = new MovieInfoCache(true, 100, 600, new SimpleMeterRegistry());
+
+    MovieInfoCacheRefresher movieInfoCacheRefresher;
+
+    MovieInfo batmanBegins = new MovieInfo("abc", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+    @BeforeEach
+    void setUp() {
+        when(moviesInfoRestClient.retrieveMovieInfoEvents(null)).thenReturn(upstream.asFlux());
+
+        var movieInfoStreamHub = new MovieInfoStreamHub(moviesInfoRestClient, 1, 10);
+        ReflectionTestUtils.setField(movieInfoStreamHub, "subscriberBufferSize", 16);
+        ReflectionTestUtils.setField(movieInfoStreamHub, "defaultOverflow", BufferOverflowStrategy.DROP_OLDEST);
+
+        movieInfoCacheRefresher = new MovieInfoCacheRefresher(movieInfoStreamHub, movieInfoCache);
+        ReflectionTestUtils.setField(movieInfoCacheRefresher, "streamRefresh", true);
+        movieInfoCacheRefresher.subscribe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoCacheRefresher.dispose();
+    }
+
+    @Test
+    void changeEventReplacesCachedMovieInfo() {
+
+        //given
+        movieInfoCache.put(batmanBegins);
+        var changed = new MovieInfo("abc", "Batman Begins (director's cut)", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+        //when
+        upstream.tryEmitNext(ServerSentEvent.builder(changed).id("1").build());
+
+        //then : served from the cache, without a call to the movie info service
+        StepVerifier.create(movieInfoCache.get("abc", id -> Mono.error(new IllegalStateException("must not be called"))))
+                .expectNext(changed)
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteEventInvalidatesCachedMovieInfo() {
+
+        //given
+        movieInfoCache.put(batmanBegins);
+
+        //when
+        upstream.tryEmitNext(ServerSentEvent.builder(new MovieInfo("abc", null, null, null, null))
+                .id("1")
+                .event("delete")
+                .build());
+
+        //then : not served from the cache any more, loaded again
+        var reloaded = new MovieInfo("abc", "Batman Begins (reloaded)", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+        StepVerifier.create(movieInfoCache.get("abc", id -> Mono.just(reloaded)))
+                .expectNext(reloaded)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,122 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MovieInfoCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicLong nanos = new AtomicLong();   // clock of the TTL, moved by the tests
+
+    // at most 2 entries, 60 seconds TTL, evictions run on the calling thread
+    MovieInfoCache movieInfoCache = new MovieInfoCache(true, 2, 60, meterRegistry, nanos::get, Runnable::run);
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void missLoadsOnceThenHits() {
+
+        //when
+        StepVerifier.create(movieInfoCache.get("abc", this::load))
+                .expectNextMatches(movieInfo -> movieInfo.getMovieInfoId().equals("abc"))
+                .verifyComplete();
+        StepVerifier.create(movieInfoCache.get("abc", this::load))
+                .expectNextMatches(movieInfo -> movieInfo.getMovieInfoId().equals("abc"))
+                .verifyComplete();
+
+        //then : the hit did not call the movie info service
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "movieInfo").tag("result", "miss").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "movieInfo").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void hitWithoutDownstreamCall() {
+
+        //given
+        movieInfoCache.put(movieInfo("abc"));
+
+        //then
+        StepVerifier.create(movieInfoCache.get("abc", id -> Mono.error(new IllegalStateException("must not be called"))))
+                .expectNextMatches(movieInfo -> movieInfo.getMovieInfoId().equals("abc"))
+                .verifyComplete();
+    }
+
+    @Test
+    void emptyResultIsNotCached() {
+
+        //when
+        StepVerifier.create(movieInfoCache.get("abc", id -> Mono.empty()))
+                .verifyComplete();
+
+        //then
+        StepVerifier.create(movieInfoCache.get("abc", this::load))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void expiresAfterTtl() {
+
+        //given
+        movieInfoCache.get("abc", this::load).block();
+
+        //when
+        nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        //then : loaded again
+        movieInfoCache.get("abc", this::load).block();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictsBeyondMaxSize() {
+
+        //when
+        movieInfoCache.put(movieInfo("abc"));
+        movieInfoCache.put(movieInfo("def"));
+        movieInfoCache.put(movieInfo("ghi"));
+
+        //then
+        assertEquals(2.0, meterRegistry.get("cache.size").tag("cache", "movieInfo").gauge().value());
+        assertEquals(1.0, meterRegistry.get("cache.evictions").tag("cache", "movieInfo").functionCounter().count());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+
+        //given
+        var disabledCache = new MovieInfoCache(false, 2, 60, new SimpleMeterRegistry(), nanos::get, Runnable::run);
+
+        //when
+        disabledCache.get("abc", this::load).block();
+        disabledCache.get("abc", this::load).block();
+
+        //then
+        assertEquals(2, loads.get());
+    }
+
+    private Mono<MovieInfo> load(String movieInfoId) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return movieInfo(movieInfoId);
+        });
+    }
+
+    private static MovieInfo movieInfo(String movieInfoId) {
+        return new MovieInfo(movieInfoId, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+}
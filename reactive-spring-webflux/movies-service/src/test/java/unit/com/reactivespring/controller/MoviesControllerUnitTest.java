@@ -1,4 +1,150 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.stream.MovieInfoStreamHub;
+import com.reactivespring.util.Deadline;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(controllers = MoviesController.class)
+@TestPropertySource(properties = {
+        "movies.retrieve.parallel=true",   // movie info and reviews fetched at the same time ( Mono.zip)
+        "movies.deadline.defaultMillis=1000"})
 public class MoviesControllerUnitTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    MoviesInfoRestClient moviesInfoRestClientMock;
+
+    @MockBean
+    ReviewsRestClient reviewsRestClientMock;
+
+    @MockBean
+    MovieInfoStreamHub movieInfoStreamHubMock;
+
+    MovieInfo batmanBegins = new MovieInfo("abc", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+    @Test
+    void retrieveMovieById_callsOverlap() {
+
+        //given : movie info takes 200 ms, the review call records whether movie info was still in flight when it started
+        var movieInfoDone = new AtomicBoolean();
+        var reviewsStartedDuringMovieInfo = new AtomicBoolean();
+
+        when(moviesInfoRestClientMock.retrieveMovieInfo("abc"))
+                .thenReturn(Mono.delay(Duration.ofMillis(200))
+                        .map(tick -> batmanBegins)
+                        .doOnSuccess(movieInfo -> movieInfoDone.set(true)));
+        when(reviewsRestClientMock.retrieveReview("abc"))
+                .thenReturn(Flux.defer(() -> {
+                    reviewsStartedDuringMovieInfo.set(!movieInfoDone.get());
+                    return Flux.just(new Review("1", "abc", "Awesome Movie", 9.0))
+                            .delayElements(Duration.ofMillis(200));
+                }));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert movie != null;
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(1, movie.getReviewList().size());
+                });
+
+        //then
+        assert reviewsStartedDuringMovieInfo.get();
+    }
+
+    @Test
+    void retrieveMovieById_movieInfoNotFoundCancelsReviews() {
+
+        //given : the review call would take 10 seconds
+        var reviewsCancelled = new AtomicBoolean();
+
+        when(moviesInfoRestClientMock.retrieveMovieInfo("abc"))
+                .thenReturn(Mono.delay(Duration.ofMillis(100))
+                        .then(Mono.error(new MoviesInfoClientException("There is no MovieInfo available for the passed in Id: abc", 404))));
+        when(reviewsRestClientMock.retrieveReview("abc"))
+                .thenReturn(Flux.just(new Review("1", "abc", "Awesome Movie", 9.0))
+                        .delayElements(Duration.ofSeconds(10))
+                        .doOnCancel(() -> reviewsCancelled.set(true)));
+
+        //when
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("There is no MovieInfo available for the passed in Id: abc");
+
+        //then : the 404 did not wait for the review call, it was cancelled
+        assert reviewsCancelled.get();
+    }
+
+    @Test
+    void retrieveMoviesByIds_failedMoviesDoNotFailTheBatch() {
+
+        //given : "slow" never answers, the reviews of "def" fail with a server error
+        var darkKnight = new MovieInfo("def", "The Dark Knight", 2008, List.of("Christian Bale", "Heath Ledger"), LocalDate.parse("2008-07-18"));
+
+        when(moviesInfoRestClientMock.retrieveMovieInfo("abc")).thenReturn(Mono.just(batmanBegins));
+        when(moviesInfoRestClientMock.retrieveMovieInfo("def")).thenReturn(Mono.just(darkKnight));
+        when(moviesInfoRestClientMock.retrieveMovieInfo("slow")).thenReturn(Mono.<MovieInfo>never().transform(Deadline::bound));   // 504 once its deadline has passed
+        when(reviewsRestClientMock.retrieveReview("abc")).thenReturn(Flux.just(new Review("1", "abc", "Awesome Movie", 9.0)));
+        when(reviewsRestClientMock.retrieveReview("def")).thenReturn(Flux.error(new ReviewsServerException("Server Exception in REviews Service")));
+        when(reviewsRestClientMock.retrieveReview("slow")).thenReturn(Flux.empty());
+
+        //when
+        var movies = webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path("/v1/movies").queryParam("ids", "abc,slow,def").build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Movie.class)
+                .getResponseBody()
+                .collectMap(movie -> movie.getMovieInfo().getMovieInfoId())
+                .block(Duration.ofSeconds(5));
+
+        //then : "slow" is left out after its deadline of 1 second, "def" is served without reviews
+        assert movies != null;
+        assertEquals(2, movies.size());
+        assertEquals(1, movies.get("abc").getReviewList().size());
+        assertFalse(movies.get("abc").isDegraded());
+        assertTrue(movies.get("def").isDegraded());
+    }
 }
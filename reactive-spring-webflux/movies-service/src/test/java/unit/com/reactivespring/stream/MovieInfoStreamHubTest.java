@@ -0,0 +1,106 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoStreamHubTest {
+
+    MoviesInfoRestClient moviesInfoRestClient = mock(MoviesInfoRestClient.class);
+
+    MovieInfoStreamHub movieInfoStreamHub;
+
+    MovieInfo batmanBegins = movieInfo("abc", "Batman Begins");
+    MovieInfo darkKnight = movieInfo("def", "The Dark Knight");
+    MovieInfo darkKnightRises = movieInfo("ghi", "Dark Knight Rises");
+
+    @BeforeEach
+    void setUp() {
+        movieInfoStreamHub = new MovieInfoStreamHub(moviesInfoRestClient, 1, 10);
+        ReflectionTestUtils.setField(movieInfoStreamHub, "subscriberBufferSize", 16);
+        ReflectionTestUtils.setField(movieInfoStreamHub, "defaultOverflow", BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    @Test
+    void reconnectResumesAfterLastEvent() {
+
+        //given
+        when(moviesInfoRestClient.retrieveMovieInfoEvents(null))
+                .thenReturn(Flux.just(event(1, batmanBegins), event(2, darkKnight)));   // first connection completes
+        when(moviesInfoRestClient.retrieveMovieInfoEvents(2L))
+                .thenReturn(Flux.error(new RuntimeException("connection reset")))   // re-connect fails
+                .thenReturn(Flux.concat(Flux.just(event(3, darkKnightRises)), Flux.never()));   // resumed after the last event received
+
+        //then
+        StepVerifier.create(movieInfoStreamHub.subscribe())
+                .expectNext(batmanBegins, darkKnight, darkKnightRises)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void subscribersShareOneUpstreamConnection() {
+
+        //given
+        when(moviesInfoRestClient.retrieveMovieInfoEvents(null))
+                .thenReturn(Flux.concat(Flux.just(event(1, batmanBegins)), Flux.never()));
+
+        //when
+        var first = movieInfoStreamHub.subscribe().subscribe();
+        var second = movieInfoStreamHub.subscribe().subscribe();
+
+        //then
+        verify(moviesInfoRestClient, times(1)).retrieveMovieInfoEvents(null);
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void deletesAreNotHandedOutAsMovieInfos() {
+
+        //given : the events are emitted once both views are subscribed
+        var upstream = Sinks.many().multicast().<ServerSentEvent<MovieInfo>>directBestEffort();
+        when(moviesInfoRestClient.retrieveMovieInfoEvents(null)).thenReturn(upstream.asFlux());
+
+        //then
+        StepVerifier.create(Flux.merge(movieInfoStreamHub.subscribe().map(MovieInfo::getName), movieInfoStreamHub.deletes()))
+                .then(() -> {
+                    upstream.tryEmitNext(event(1, batmanBegins));
+                    upstream.tryEmitNext(deleteEvent(2, "abc"));
+                    upstream.tryEmitNext(event(3, darkKnight));
+                })
+                .expectNext("Batman Begins", "abc", "The Dark Knight")
+                .thenCancel()
+                .verify();
+    }
+
+    private static ServerSentEvent<MovieInfo> deleteEvent(long seq, String movieInfoId) {
+        return ServerSentEvent.builder(new MovieInfo(movieInfoId, null, null, null, null))
+                .id(String.valueOf(seq))
+                .event(MovieInfoStreamHub.DELETE)
+                .build();
+    }
+
+    private static ServerSentEvent<MovieInfo> event(long seq, MovieInfo movieInfo) {
+        return ServerSentEvent.builder(movieInfo).id(String.valueOf(seq)).build();
+    }
+
+    private static MovieInfo movieInfo(String id, String name) {
+        return new MovieInfo(id, name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+}
@@ -0,0 +1,30 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+public class ConflationTest {
+
+    // updates are "<movie id>:<version>"
+    Flux<String> updates = Flux.just("abc:1", "def:1", "abc:2", "abc:3", "def:2");
+
+    @Test
+    void consumerKeepingUpSeesEveryUpdate() {
+
+        //then
+        StepVerifier.create(Conflation.latestPerKey(updates, update -> update.split(":")[0]))
+                .expectNext("abc:1", "def:1", "abc:2", "abc:3", "def:2")
+                .verifyComplete();
+    }
+
+    @Test
+    void slowConsumerSeesLatestUpdatePerKey() {
+
+        //then
+        StepVerifier.create(Conflation.latestPerKey(updates, update -> update.split(":")[0]), 0)   // nothing requested while the updates arrive
+                .thenRequest(10)
+                .expectNext("abc:3", "def:2")   // abc keeps its place in front of def
+                .verifyComplete();
+    }
+}
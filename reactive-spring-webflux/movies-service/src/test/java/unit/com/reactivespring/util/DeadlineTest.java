@@ -0,0 +1,48 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+public class DeadlineTest {
+
+    @Test
+    void callWithinDeadline() {
+
+        //given
+        var call = Mono.just("movie").delayElement(Duration.ofMillis(10));
+
+        //then
+        StepVerifier.create(call.transform(Deadline::bound)
+                        .contextWrite(context -> Deadline.with(context, Duration.ofSeconds(1))))
+                .expectNext("movie")
+                .verifyComplete();
+    }
+
+    @Test
+    void callCancelledAfterDeadline() {
+
+        //given
+        var call = Mono.just("movie").delayElement(Duration.ofSeconds(5));
+
+        //then
+        StepVerifier.create(call.transform(Deadline::bound)
+                        .contextWrite(context -> Deadline.with(context, Duration.ofMillis(50))))
+                .expectErrorMatches(ex -> ex instanceof ResponseStatusException
+                        && ((ResponseStatusException) ex).getStatus() == HttpStatus.GATEWAY_TIMEOUT)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void noDeadlineInContext() {
+
+        //then
+        StepVerifier.create(Mono.just("movie").transform(Deadline::bound))
+                .expectNext("movie")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,53 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HedgingPolicyTest {
+
+    AtomicInteger attempts = new AtomicInteger();
+
+    // first attempt is slow, every further attempt answers right away
+    Supplier<Mono<String>> attempt = () -> attempts.incrementAndGet() == 1
+            ? Mono.just("slow").delayElement(Duration.ofMillis(500))
+            : Mono.just("fast");
+
+    @Test
+    void slowAttemptIsHedged() {
+
+        //given
+        var hedgingPolicy = hedgingPolicy(new RetryBudget(1.0, 0, 10));
+
+        //then
+        StepVerifier.create(hedgingPolicy.hedge(attempt))
+                .expectNext("fast")
+                .verifyComplete();
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void noHedgeWithoutBudget() {
+
+        //given
+        var hedgingPolicy = hedgingPolicy(new RetryBudget(0, 0, 10));
+
+        //then
+        StepVerifier.create(hedgingPolicy.hedge(attempt))
+                .expectNext("slow")
+                .verifyComplete();
+        assertEquals(1, attempts.get());
+    }
+
+    private HedgingPolicy hedgingPolicy(RetryBudget hedgeBudget) {
+        return new HedgingPolicy("test", 0.95, Duration.ofMillis(10), Duration.ofMillis(50),
+                new LatencyTracker(16, 100), hedgeBudget, new SimpleMeterRegistry());
+    }
+}
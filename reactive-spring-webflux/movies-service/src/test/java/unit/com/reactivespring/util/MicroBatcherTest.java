@@ -0,0 +1,109 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MicroBatcherTest {
+
+    List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    MicroBatcher<String, String> microBatcher = new MicroBatcher<>(3, Duration.ofMillis(50), keys -> {
+        batches.add(keys);
+        return Mono.just(keys.stream()
+                .filter(key -> !key.equals("unknown"))
+                .collect(Collectors.toMap(Function.identity(), key -> "movie-" + key)));
+    });
+
+    @AfterEach
+    void tearDown() {
+        microBatcher.dispose();
+    }
+
+    @Test
+    void lookupsWithinWindowShareOneBatch() {
+
+        //when
+        var results = Mono.zip(microBatcher.load("1"), microBatcher.load("2"));
+
+        //then
+        StepVerifier.create(results)
+                .assertNext(movies -> {
+                    assertEquals("movie-1", movies.getT1());
+                    assertEquals("movie-2", movies.getT2());
+                })
+                .verifyComplete();
+        assertEquals(List.of(List.of("1", "2")), batches);
+    }
+
+    @Test
+    void fullBatchIsFlushedWithoutWaitingForWindow() {
+
+        //when
+        var results = Mono.zip(microBatcher.load("1"), microBatcher.load("2"), microBatcher.load("3"), microBatcher.load("4"));
+
+        //then
+        StepVerifier.create(results)
+                .expectNextCount(1)
+                .verifyComplete();
+        assertEquals(2, batches.size());
+        assertEquals(List.of("1", "2", "3"), batches.get(0));
+    }
+
+    @Test
+    void missingKeyCompletesEmpty() {
+
+        StepVerifier.create(microBatcher.load("unknown"))
+                .verifyComplete();
+    }
+
+    @Test
+    void burstAgainstSlowDownstream() {
+
+        //given : batches of 2 every millisecond, but only 2 batched calls of 20 ms at a time
+        var slowBatcher = new MicroBatcher<Integer, String>(2, Duration.ofMillis(1), 2, keys -> Mono.delay(Duration.ofMillis(20))
+                .map(tick -> keys.stream().collect(Collectors.toMap(Function.identity(), key -> "movie-" + key))));
+
+        //when : 100 loads at once, far more batches than can be in flight
+        var results = Flux.range(1, 100)
+                .flatMap(slowBatcher::load, 100)
+                .collectList();
+
+        //then : every load is answered, none is lost to an overflow of the batching pipeline
+        StepVerifier.create(results)
+                .assertNext(movies -> assertEquals(100, movies.size()))
+                .verifyComplete();
+        slowBatcher.dispose();
+    }
+
+    @Test
+    void failedPipelineIsRestarted() {
+
+        //given : a loader which throws instead of returning a failed Mono, which ends the batching pipeline
+        var failingBatcher = new MicroBatcher<String, String>(10, Duration.ofMillis(10), 2, keys -> {
+            if (keys.contains("boom")) {
+                throw new IllegalStateException("boom");
+            }
+            return Mono.just(keys.stream().collect(Collectors.toMap(Function.identity(), key -> "movie-" + key)));
+        });
+
+        //then : the waiting caller is failed instead of hanging, later loads are batched again
+        StepVerifier.create(failingBatcher.load("boom"))
+                .expectErrorMessage("boom")
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(failingBatcher.load("1"))
+                .expectNext("movie-1")
+                .verifyComplete();
+        failingBatcher.dispose();
+    }
+}
@@ -0,0 +1,67 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryBudgetTest {
+
+    @Test
+    void reserveAllowsRetriesWithoutTraffic() {
+
+        //given
+        var retryBudget = new RetryBudget(0.2, 2, 100);
+
+        //then
+        assertTrue(retryBudget.tryAcquire());
+        assertTrue(retryBudget.tryAcquire());
+        assertFalse(retryBudget.tryAcquire());   // reserve of 2 per second is used up and no requests deposited tokens
+    }
+
+    @Test
+    void retriesAreCappedToRatioOfRequests() {
+
+        //given
+        var retryBudget = new RetryBudget(0.25, 0, 100);
+
+        //when
+        for (int i = 0; i < 8; i++) {
+            retryBudget.recordRequest();
+        }
+
+        //then : 8 requests * 0.25 -> 2 retries
+        assertTrue(retryBudget.tryAcquire());
+        assertTrue(retryBudget.tryAcquire());
+        assertFalse(retryBudget.tryAcquire());
+    }
+
+    @Test
+    void failureAfterLastAttemptTakesNoToken() {
+
+        //given : a reserve of 10 retries and no traffic, 3 attempts ( 2 retries) per request
+        var retryBudget = new RetryBudget(0, 10, 100);
+        var retryPolicy = new RetryPolicy("moviesInfo", 3, Duration.ofMillis(1), Duration.ofMillis(1), 0,
+                Duration.ofSeconds(1), retryBudget, new SimpleMeterRegistry());
+
+        //when : every attempt fails
+        StepVerifier.create(retryPolicy.apply(Mono.error(new MoviesInfoServerException("Server Exception in MoviesInfoService"))))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+
+        //then : the 2 retries took 2 tokens, the failure of the third attempt none
+        assertEquals(2.0, retryPolicy.getRetries().count());
+        assertEquals(0.0, retryPolicy.getRetriesRejected().count());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(retryBudget.tryAcquire());
+        }
+        assertFalse(retryBudget.tryAcquire());
+    }
+}
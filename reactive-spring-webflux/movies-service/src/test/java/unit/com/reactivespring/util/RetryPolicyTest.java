@@ -0,0 +1,50 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RetryPolicyTest {
+
+    RetryPolicy retryPolicy = new RetryPolicy("reviews", 3, Duration.ofMillis(1), Duration.ofMillis(1), 0,
+            Duration.ofMillis(200), new RetryBudget(0, 10, 100), new SimpleMeterRegistry());
+
+    @Test
+    void retriedStreamDoesNotRepeatItems() {
+
+        //given : the first attempt fails after its first item, the second one succeeds
+        var attempts = new AtomicInteger();
+        var reviews = Flux.defer(() -> attempts.incrementAndGet() == 1
+                ? Flux.concat(Flux.just("review-1"), Flux.error(new ReviewsServerException("connection reset")))
+                : Flux.just("review-1", "review-2"));
+
+        //then
+        StepVerifier.create(retryPolicy.applyFlux(reviews))
+                .expectNext("review-1", "review-2")
+                .verifyComplete();
+    }
+
+    @Test
+    void timeoutBoundsTheWholeAttempt() {
+
+        //given : every item arrives within the timeout, the whole stream does not
+        var attempts = new AtomicInteger();
+        var reviews = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.just("review-1", "review-2", "review-3").delayElements(Duration.ofMillis(100));
+        });
+
+        //then
+        StepVerifier.create(retryPolicy.applyFlux(reviews))
+                .expectError()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(3, attempts.get());   // a timed out attempt is retried, maxAttempts counts the first attempt too
+    }
+}
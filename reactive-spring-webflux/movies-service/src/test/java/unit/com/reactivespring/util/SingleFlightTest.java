@@ -0,0 +1,98 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneCall() {
+
+        //given
+        var upstreamCalls = new AtomicInteger();
+        var call = Mono.fromCallable(() -> "movie-" + upstreamCalls.incrementAndGet())
+                .delayElement(Duration.ofMillis(100));   // keep the call in flight while the second caller arrives
+
+        //when
+        var first = singleFlight.execute("abc", () -> call);
+        var second = singleFlight.execute("abc", () -> call);
+
+        //then
+        StepVerifier.create(Mono.zip(first, second))
+                .assertNext(results -> {
+                    assertEquals("movie-1", results.getT1());
+                    assertEquals("movie-1", results.getT2());
+                })
+                .verifyComplete();
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, singleFlight.size());   // entry is removed once the call completes
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+
+        //given
+        var upstreamCalls = new AtomicInteger();
+
+        //when
+        var first = singleFlight.execute("abc", () -> Mono.fromCallable(upstreamCalls::incrementAndGet).map(String::valueOf)).block();
+        var second = singleFlight.execute("abc", () -> Mono.fromCallable(upstreamCalls::incrementAndGet).map(String::valueOf)).block();
+
+        //then
+        assertEquals("1", first);
+        assertEquals("2", second);
+    }
+
+    @Test
+    void failedCallIsRemoved() {
+
+        //when
+        StepVerifier.create(singleFlight.execute("abc", () -> Mono.error(new RuntimeException("boom"))))
+                .expectErrorMessage("boom")
+                .verify();
+
+        //then
+        assertEquals(0, singleFlight.size());
+        StepVerifier.create(singleFlight.execute("abc", () -> Mono.just("retry")))
+                .expectNext("retry")
+                .verifyComplete();
+    }
+
+    @Test
+    void cancelledCallIsRemoved() {
+
+        //given : a call which never answers, shared by two callers
+        var upstreamCancelled = new AtomicBoolean();
+        var call = Mono.<String>never().doOnCancel(() -> upstreamCancelled.set(true));
+        var first = singleFlight.execute("abc", () -> call).subscribe();
+        var second = singleFlight.execute("abc", () -> call).subscribe();
+
+        //when : one caller leaves, the other still waits
+        first.dispose();
+
+        //then
+        assertFalse(upstreamCancelled.get());
+        assertEquals(1, singleFlight.size());
+
+        //when : the last caller leaves
+        second.dispose();
+
+        //then : the call is cancelled and the next caller starts a fresh one
+        assertTrue(upstreamCancelled.get());
+        assertEquals(0, singleFlight.size());
+        StepVerifier.create(singleFlight.execute("abc", () -> Mono.just("fresh")))
+                .expectNext("fresh")
+                .verifyComplete();
+    }
+}